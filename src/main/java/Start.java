@@ -1,12 +1,16 @@
 import jawaitasync.Promise;
+import jawaitasync.http.HttpHeaderNames;
+import jawaitasync.http.HttpHeaders;
+import jawaitasync.http.HttpRequest;
+import jawaitasync.http.HttpRequestDecoder;
+import jawaitasync.http.HttpResponse;
+import jawaitasync.http.HttpResponseWriter;
 import jawaitasync.tools.AsyncSocket;
 import jawaitasync.tools.AsyncSocketListener;
 
-import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 
 import static jawaitasync.Promise.await;
-import static jawaitasync.Promise.complete;
 
 public class Start {
 	public void start() throws Exception {
@@ -30,55 +34,30 @@ public class Start {
 		}
 	}
 
-	public Promise<String> readLineAsync(AsyncSocket socket) throws UnsupportedEncodingException {
-		byte[] bytes = await(socket.readUntilAsync((byte)'\n'));
-		return complete(new String(bytes, "UTF-8"));
-	}
-
-	private Promise<Request> readHeadersAsync(AsyncSocket socket) throws UnsupportedEncodingException {
-		String line;
-
-		Request request = new Request();
-		line = await(readLineAsync(socket)).trim();
-		String[] parts = line.split(" ");
-		request.method = parts[0];
-
-		while (true) {
-			line = await(readLineAsync(socket)).trim();
-			if (line.length() == 0) break;
-			String[] headerParts = line.split(":", 2);
-			request.headers.add(new RequestHeader(headerParts[0].trim(), headerParts[1].trim()));
-			//System.out.println("::" + line);
-		}
-
-		return complete(request);
+	// The whole head is parsed in one pass from the socket buffers
+	private Promise<HttpRequest> readHeadersAsync(AsyncSocket socket) {
+		return socket.readFrameAsync(new HttpRequestDecoder());
 	}
 
 	public void handleSocket(AsyncSocket socket) throws Exception {
 		try {
-			Request request = await(readHeadersAsync(socket));
+			HttpRequest request = await(readHeadersAsync(socket));
 
-			String content = request.method + ": Hello World!\n";
+			StringBuilder content = new StringBuilder(256).append(request.getMethod()).append(": Hello World!\n");
 
-			for (int n = 0; n < request.headers.size(); n++) {
-				RequestHeader header = request.headers.get(n);
-				//content += n + ": " + n + "<br />\n";
-				content += header.getKey() + ": " + header.getValue() + "<br />\n";
+			HttpHeaders headers = request.getHeaders();
+			for (int n = 0; n < headers.size(); n++) {
+				content.append(headers.getName(n)).append(": ").append(headers.getValue(n)).append("<br />\n");
 			}
 
-			// Not working!
-			//for (RequestHeader header : request.headers) {
-			//	content += header.getKey() + ": " + header.getValue() + "<br />\n";
-			//}
-
-			//byte[] contentBytes = content.getBytes();
-			socket
-				.write(("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=utf-8\r\nContent-Length: " + content.getBytes().length + "\r\n\r\n").getBytes())
-				.write(content.getBytes())
+			// Head and body leave in one gathering write
+			HttpResponse response = new HttpResponse()
+				.setHeader(HttpHeaderNames.CONTENT_TYPE, "text/html; charset=utf-8")
+				.setBody(content.toString())
 			;
+			new HttpResponseWriter(socket).write(response, false, false, false);
 		} finally {
 			socket.close();
 		}
 	}
 }
-
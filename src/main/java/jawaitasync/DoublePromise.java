@@ -0,0 +1,39 @@
+package jawaitasync;
+
+public class DoublePromise extends Promise<Double> {
+	private double value;
+
+	public void resolve(double value) {
+		Object waiters = claim();
+		if (waiters == CLAIM_FAILED) return;
+		this.value = value;
+		publish(waiters);
+	}
+
+	// null is accepted as with any Promise, callbacks get null and the primitive reads as 0
+	@Override
+	public void resolve(Double value) {
+		if (value == null) {
+			super.resolve(null);
+		} else {
+			resolve(value.doubleValue());
+		}
+	}
+
+	// Throws the rejection exception when rejected.
+	public double getResolvedDouble() {
+		rethrowRejection();
+		return value;
+	}
+
+	@Override
+	Object getCallbackValue(Object result) {
+		return (result == PRIMITIVE_VALUE) ? (Object) value : super.getCallbackValue(result);
+	}
+
+	public static DoublePromise resolved(double value) {
+		DoublePromise promise = new DoublePromise();
+		promise.resolve(value);
+		return promise;
+	}
+}
@@ -0,0 +1,120 @@
+package jawaitasync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Response body read chunk by chunk with readAsync, null at the end. Once capacity chunks are buffered the connection
+ * stops reading until the reader drained half of them, so memory stays bounded for any body size without blocking
+ * the HTTP client threads.
+ */
+public class HttpBodyStream {
+	static private final Object END = new Object();
+
+	// Pauses and resumes reading the response from the connection
+	interface Flow {
+		void setReadable(boolean readable);
+	}
+
+	private final int capacity;
+	// Guarded by this: chunks, then END or the failure
+	private final ArrayDeque<Object> chunks = new ArrayDeque<>();
+	private Promise<ByteBuffer> reader;
+	private boolean closed = false;
+	private boolean paused = false;
+	private Flow flow;
+
+	HttpBodyStream(int capacity) {
+		this.capacity = capacity;
+	}
+
+	// Next chunk of the body, null once it ended. Only one read may be pending at a time.
+	public Promise<ByteBuffer> readAsync() {
+		Promise<ByteBuffer> promise = new Promise<>();
+		Object item;
+		synchronized (this) {
+			if (reader != null) throw (new IllegalStateException("A read is already pending"));
+			item = chunks.peek();
+			if (item == null) {
+				reader = promise;
+				return promise;
+			}
+			if (item instanceof ByteBuffer) chunks.poll();
+		}
+		updateFlow();
+		settle(promise, item);
+		return promise;
+	}
+
+	synchronized public boolean isPaused() {
+		return paused;
+	}
+
+	// Stops the download, the remaining body is discarded.
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			chunks.clear();
+		}
+		// Lets the next chunk arrive and abort the download
+		updateFlow();
+	}
+
+	// Chunks pushed before the flow was set are paused once it is
+	synchronized void setFlow(Flow flow) {
+		this.flow = flow;
+		updateFlow();
+	}
+
+	// Applied under the lock so a pause and a resume decided on different threads can't land out of order
+	synchronized private void updateFlow() {
+		if (flow == null) return;
+		if (!paused && !closed && chunks.size() >= capacity) {
+			paused = true;
+		} else if (paused && (closed || chunks.size() <= capacity / 2)) {
+			paused = false;
+		} else {
+			return;
+		}
+		flow.setReadable(!paused);
+	}
+
+	// Called from the client thread, never blocks. Returns false when the stream was closed.
+	boolean push(ByteBuffer chunk) {
+		Promise<ByteBuffer> promise;
+		synchronized (this) {
+			if (closed) return false;
+			promise = reader;
+			reader = null;
+			if (promise == null) chunks.add(chunk);
+		}
+		if (promise != null) {
+			promise.resolve(chunk);
+		} else {
+			updateFlow();
+		}
+		return true;
+	}
+
+	void end(Exception failure) {
+		Promise<ByteBuffer> promise;
+		Object item = (failure != null) ? failure : END;
+		synchronized (this) {
+			promise = reader;
+			reader = null;
+			if (promise == null) chunks.add(item);
+		}
+		if (promise != null) settle(promise, item);
+	}
+
+	static private void settle(Promise<ByteBuffer> promise, Object item) {
+		if (item == END) {
+			promise.resolve(null);
+		} else if (item instanceof Exception) {
+			promise.reject((Exception) item);
+		} else {
+			promise.resolve((ByteBuffer) item);
+		}
+	}
+}
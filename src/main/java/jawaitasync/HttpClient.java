@@ -0,0 +1,440 @@
+package jawaitasync;
+
+import com.ning.http.client.*;
+import jawaitasync.loop.EventLoop;
+import jawaitasync.loop.EventLoopGroup;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.NormalEventLoop;
+import org.jboss.netty.channel.Channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Shared HTTP client with keep-alive connection pooling. Requests above the total or per-host limits wait in a queue
+ * instead of opening more connections. Promises settle on the AsyncHttpClient threads, callbacks run on their loops.
+ */
+public class HttpClient implements Closeable {
+	static public final int DEFAULT_MAX_IN_FLIGHT = 256;
+	static public final int DEFAULT_MAX_PER_HOST = 16;
+	static public final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+	static public final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 60000;
+
+	// Bodies announcing a bigger Content-Length start with this much and grow as they arrive
+	static private final int MAX_PREALLOCATED_BODY = 1024 * 1024;
+
+	static private volatile HttpClient shared;
+	// Channel of a Netty response future, used to pause reading while a stream's reader catches up
+	static private final Method NETTY_CHANNEL = getNettyChannelMethod();
+
+	// Client of the current loop's group, or the process wide one outside of groups.
+	static public HttpClient current() {
+		EventLoop loop = EventLoopHolder.current();
+		EventLoopGroup group = (loop instanceof NormalEventLoop) ? ((NormalEventLoop) loop).getGroup() : null;
+		return (group != null) ? group.getHttpClient() : shared();
+	}
+
+	static public HttpClient shared() {
+		HttpClient client = shared;
+		if (client == null) {
+			synchronized (HttpClient.class) {
+				if (shared == null) shared = new HttpClient();
+				client = shared;
+			}
+		}
+		return client;
+	}
+
+	synchronized static public void setShared(HttpClient client) {
+		shared = client;
+	}
+
+	private final AsyncHttpClient client;
+	private final int maxInFlight;
+	private final int maxPerHost;
+	// Guarded by this
+	private int inFlight = 0;
+	private boolean closed = false;
+	private final HashMap<String, Integer> inFlightByHost = new HashMap<>();
+	private final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+	private final HashSet<PendingRequest> running = new HashSet<>();
+
+	public HttpClient() {
+		this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_REQUEST_TIMEOUT_MILLIS);
+	}
+
+	public HttpClient(int maxInFlight, int maxPerHost, int connectTimeoutMillis, int requestTimeoutMillis) {
+		this.maxInFlight = maxInFlight;
+		this.maxPerHost = maxPerHost;
+		this.client = new AsyncHttpClient(new AsyncHttpClientConfig.Builder()
+			.setAllowPoolingConnection(true)
+			// Also bounds the idle connections kept per host
+			.setMaximumConnectionsPerHost(maxPerHost)
+			.setMaximumConnectionsTotal(-1)
+			.setConnectionTimeoutInMs(connectTimeoutMillis)
+			.setRequestTimeoutInMs(requestTimeoutMillis)
+			.setFollowRedirects(true)
+			.build()
+		);
+	}
+
+	public Promise<String> getStringAsync(String url) {
+		return executeAsync(url, new AsyncCompletionHandler<String>() {
+			@Override
+			public String onCompleted(Response response) throws Exception {
+				return response.getResponseBody();
+			}
+		});
+	}
+
+	// Body as bytes, without charset decoding. Sized from Content-Length when the server sends it, up to 1MB up front.
+	public Promise<byte[]> getBytesAsync(String url) {
+		return executeAsync(url, new BodyHandler<byte[]>() {
+			private byte[] data = new byte[0];
+			private int size = 0;
+
+			@Override
+			protected void onContentLength(long length) throws IOException {
+				if (length > Integer.MAX_VALUE - 8) throw (new IOException("Body too large for a byte[]: " + length));
+				data = new byte[(int) Math.min(length, MAX_PREALLOCATED_BODY)];
+			}
+
+			@Override
+			protected void onChunk(ByteBuffer chunk) throws IOException {
+				int length = chunk.remaining();
+				if (size + length > data.length) {
+					if ((long) size + length > Integer.MAX_VALUE - 8) throw (new IOException("Body too large for a byte[]"));
+					data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) size + length, data.length * 2L)));
+				}
+				chunk.get(data, size, length);
+				size += length;
+			}
+
+			@Override
+			public byte[] onCompleted() {
+				return (size == data.length) ? data : Arrays.copyOf(data, size);
+			}
+		});
+	}
+
+	// Calls consumer with each chunk as it arrives, on the client thread. Resolves to the body length.
+	public Promise<Long> streamAsync(String url, ChunkConsumer consumer) {
+		return executeAsync(url, new BodyHandler<Long>() {
+			@Override
+			protected void onChunk(ByteBuffer chunk) throws Exception {
+				consumer.onChunk(chunk);
+			}
+
+			@Override
+			public Long onCompleted() {
+				return length;
+			}
+		});
+	}
+
+	// Writes the body to the channel at its current position as it arrives. Resolves to the body length.
+	public Promise<Long> downloadToAsync(String url, FileChannel channel) {
+		return streamAsync(url, (chunk) -> {
+			while (chunk.hasRemaining()) channel.write(chunk);
+		});
+	}
+
+	// Body readable with await(stream.readAsync()). Reading the connection pauses while 16 chunks are buffered.
+	public HttpBodyStream openStream(String url) {
+		HttpBodyStream stream = new HttpBodyStream(16);
+		PendingRequest<Long> request = execute(url, new BodyHandler<Long>() {
+			@Override
+			protected void onChunk(ByteBuffer chunk) throws Exception {
+				if (!stream.push(chunk)) throw (new IOException("Stream closed"));
+			}
+
+			@Override
+			public void onThrowable(Throwable t) {
+				stream.end((t instanceof Exception) ? (Exception) t : new IOException(t));
+			}
+
+			@Override
+			public Long onCompleted() {
+				stream.end(null);
+				return length;
+			}
+		});
+		if (request != null) stream.setFlow(request::setReadable);
+		return stream;
+	}
+
+	// Runs handler for a GET of url once there is room under the limits, the promise gets what onCompleted returns.
+	public <T> Promise<T> executeAsync(String url, AsyncHandler<T> handler) {
+		Promise<T> promise = new Promise<>();
+		execute(url, handler, promise);
+		return promise;
+	}
+
+	private <T> PendingRequest<T> execute(String url, AsyncHandler<T> handler) {
+		return execute(url, handler, new Promise<>());
+	}
+
+	// Null when the request couldn't be built or the client is closed, the promise is rejected then
+	private <T> PendingRequest<T> execute(String url, AsyncHandler<T> handler, Promise<T> promise) {
+		EventLoop loop = EventLoopHolder.current();
+		PendingRequest<T> request;
+		try {
+			request = new PendingRequest<>(new RequestBuilder("GET").setUrl(url).build(), getHostKey(url), handler, promise, loop);
+		} catch (Exception e) {
+			promise.reject(e);
+			return null;
+		}
+		boolean start;
+		synchronized (this) {
+			if (closed) {
+				promise.reject(new ClosedChannelException());
+				return null;
+			}
+			loop.refCountInc();
+			start = tryAcquire(request.host);
+			if (start) {
+				running.add(request);
+			} else {
+				pending.add(request);
+			}
+		}
+		if (start) start(request);
+		return request;
+	}
+
+	synchronized public int getInFlight() {
+		return inFlight;
+	}
+
+	// Rejects the queued and running requests, AsyncHttpClient doesn't always report the ones it drops.
+	@Override
+	public void close() {
+		List<PendingRequest> queued;
+		List<PendingRequest> started;
+		synchronized (this) {
+			closed = true;
+			queued = new ArrayList<>(pending);
+			pending.clear();
+			started = new ArrayList<>(running);
+		}
+		for (PendingRequest request : queued) request.cancel(new ClosedChannelException(), false);
+		client.close();
+		for (PendingRequest request : started) request.cancel(new ClosedChannelException(), true);
+	}
+
+	static private String getHostKey(String url) {
+		URI uri = URI.create(url);
+		return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+	}
+
+	private boolean tryAcquire(String host) {
+		if (inFlight >= maxInFlight) return false;
+		Integer count = inFlightByHost.get(host);
+		if (count != null && count >= maxPerHost) return false;
+		inFlight++;
+		inFlightByHost.put(host, (count != null) ? count + 1 : 1);
+		return true;
+	}
+
+	private void release(PendingRequest finished) {
+		String host = finished.host;
+		List<PendingRequest> next = new ArrayList<>();
+		synchronized (this) {
+			running.remove(finished);
+			inFlight--;
+			int count = inFlightByHost.get(host) - 1;
+			if (count == 0) {
+				inFlightByHost.remove(host);
+			} else {
+				inFlightByHost.put(host, count);
+			}
+			for (Iterator<PendingRequest> iterator = pending.iterator(); iterator.hasNext() && inFlight < maxInFlight; ) {
+				PendingRequest request = iterator.next();
+				if (tryAcquire(request.host)) {
+					iterator.remove();
+					running.add(request);
+					next.add(request);
+				}
+			}
+		}
+		for (PendingRequest request : next) start(request);
+	}
+
+	private <T> void start(PendingRequest<T> request) {
+		try {
+			request.setFuture(client.executeRequest(request.request, request));
+		} catch (Exception e) {
+			request.onThrowable(e);
+		}
+	}
+
+	static private Method getNettyChannelMethod() {
+		try {
+			Method method = Class.forName("com.ning.http.client.providers.netty.NettyResponseFuture").getDeclaredMethod("channel");
+			method.setAccessible(true);
+			return method;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	// Stops or restarts reading the connection. Does nothing with providers other than Netty.
+	static private void setReadable(ListenableFuture<?> future, boolean readable) {
+		if (NETTY_CHANNEL == null || !NETTY_CHANNEL.getDeclaringClass().isInstance(future)) return;
+		try {
+			Channel channel = (Channel) NETTY_CHANNEL.invoke(future);
+			if (channel != null) channel.setReadable(readable);
+		} catch (Exception e) {
+		}
+	}
+
+	public interface ChunkConsumer {
+		void onChunk(ByteBuffer chunk) throws Exception;
+	}
+
+	// Fails on error statuses and hands every body part to onChunk without keeping it.
+	static private abstract class BodyHandler<T> implements AsyncHandler<T> {
+		protected long length = 0;
+
+		@Override
+		public void onThrowable(Throwable t) {
+		}
+
+		@Override
+		public STATE onStatusReceived(HttpResponseStatus status) throws Exception {
+			if (status.getStatusCode() >= 400) throw (new IOException("HTTP " + status.getStatusCode() + " " + status.getStatusText()));
+			return STATE.CONTINUE;
+		}
+
+		@Override
+		public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+			String contentLength = headers.getHeaders().getFirstValue("Content-Length");
+			if (contentLength != null) onContentLength(Long.parseLong(contentLength.trim()));
+			return STATE.CONTINUE;
+		}
+
+		@Override
+		public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+			ByteBuffer chunk = bodyPart.getBodyByteBuffer();
+			length += chunk.remaining();
+			onChunk(chunk);
+			return STATE.CONTINUE;
+		}
+
+		protected void onContentLength(long length) throws IOException {
+		}
+
+		abstract protected void onChunk(ByteBuffer chunk) throws Exception;
+	}
+
+	private final class PendingRequest<T> implements AsyncHandler<T> {
+		final Request request;
+		final String host;
+		final AsyncHandler<T> handler;
+		final Promise<T> promise;
+		final EventLoop loop;
+		private boolean done = false;
+		// Guarded by this
+		private ListenableFuture<T> future;
+		private boolean readable = true;
+
+		PendingRequest(Request request, String host, AsyncHandler<T> handler, Promise<T> promise, EventLoop loop) {
+			this.request = request;
+			this.host = host;
+			this.handler = handler;
+			this.promise = promise;
+			this.loop = loop;
+		}
+
+		// The response may already be arriving, a pause requested before is applied here
+		synchronized void setFuture(ListenableFuture<T> future) {
+			this.future = future;
+			if (!readable) HttpClient.setReadable(future, false);
+		}
+
+		synchronized void setReadable(boolean readable) {
+			this.readable = readable;
+			if (future != null) HttpClient.setReadable(future, readable);
+		}
+
+		@Override
+		public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+			return handler.onBodyPartReceived(bodyPart);
+		}
+
+		@Override
+		public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+			return handler.onStatusReceived(responseStatus);
+		}
+
+		@Override
+		public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+			return handler.onHeadersReceived(headers);
+		}
+
+		@Override
+		public T onCompleted() throws Exception {
+			T result;
+			try {
+				result = handler.onCompleted();
+			} catch (Exception e) {
+				promise.reject(e);
+				finish();
+				throw (e);
+			}
+			promise.resolve(result);
+			finish();
+			return result;
+		}
+
+		@Override
+		public void onThrowable(Throwable t) {
+			synchronized (this) {
+				if (done) return;
+			}
+			try {
+				handler.onThrowable(t);
+			} finally {
+				promise.reject((t instanceof Exception) ? (Exception) t : new IOException(t));
+				finish();
+			}
+		}
+
+		// Queued requests hold no slot under the limits, started ones release theirs
+		void cancel(Exception e, boolean started) {
+			synchronized (this) {
+				if (done) return;
+				done = true;
+			}
+			try {
+				handler.onThrowable(e);
+			} finally {
+				promise.reject(e);
+				if (started) release(this);
+				loop.refCountDec();
+			}
+		}
+
+		// After settling the promise, so its callbacks are queued before the loop reference goes away
+		private void finish() {
+			synchronized (this) {
+				if (done) return;
+				done = true;
+			}
+			release(this);
+			loop.refCountDec();
+		}
+	}
+}
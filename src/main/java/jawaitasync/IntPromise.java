@@ -0,0 +1,39 @@
+package jawaitasync;
+
+public class IntPromise extends Promise<Integer> {
+	private int value;
+
+	public void resolve(int value) {
+		Object waiters = claim();
+		if (waiters == CLAIM_FAILED) return;
+		this.value = value;
+		publish(waiters);
+	}
+
+	// null is accepted as with any Promise, callbacks get null and the primitive reads as 0
+	@Override
+	public void resolve(Integer value) {
+		if (value == null) {
+			super.resolve(null);
+		} else {
+			resolve(value.intValue());
+		}
+	}
+
+	// Throws the rejection exception when rejected.
+	public int getResolvedInt() {
+		rethrowRejection();
+		return value;
+	}
+
+	@Override
+	Object getCallbackValue(Object result) {
+		return (result == PRIMITIVE_VALUE) ? (Object) value : super.getCallbackValue(result);
+	}
+
+	public static IntPromise resolved(int value) {
+		IntPromise promise = new IntPromise();
+		promise.resolve(value);
+		return promise;
+	}
+}
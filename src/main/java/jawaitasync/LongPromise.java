@@ -0,0 +1,39 @@
+package jawaitasync;
+
+public class LongPromise extends Promise<Long> {
+	private long value;
+
+	public void resolve(long value) {
+		Object waiters = claim();
+		if (waiters == CLAIM_FAILED) return;
+		this.value = value;
+		publish(waiters);
+	}
+
+	// null is accepted as with any Promise, callbacks get null and the primitive reads as 0
+	@Override
+	public void resolve(Long value) {
+		if (value == null) {
+			super.resolve(null);
+		} else {
+			resolve(value.longValue());
+		}
+	}
+
+	// Throws the rejection exception when rejected.
+	public long getResolvedLong() {
+		rethrowRejection();
+		return value;
+	}
+
+	@Override
+	Object getCallbackValue(Object result) {
+		return (result == PRIMITIVE_VALUE) ? (Object) value : super.getCallbackValue(result);
+	}
+
+	public static LongPromise resolved(long value) {
+		LongPromise promise = new LongPromise();
+		promise.resolve(value);
+		return promise;
+	}
+}
@@ -1,54 +1,178 @@
 package jawaitasync;
 
+import jawaitasync.loop.EventLoop;
 import jawaitasync.loop.EventLoopHolder;
-import sun.net.www.content.text.Generic;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class Promise<T> {
-	Queue<ResultRunnable> callbacks = new LinkedList<>();
-	boolean resolved = false;
-	Object resolvedValue;
+	// The whole promise lives in a single atomic word:
+	// - null: pending without callbacks
+	// - Waiter: pending, top of a lock-free stack of callbacks
+	// - Completing: a primitive promise is writing its value, holds the callbacks registered meanwhile
+	// - anything else: resolved; the value itself, the rejection exception, NULL_VALUE or PRIMITIVE_VALUE
+	private volatile Object state;
+
+	static private final AtomicReferenceFieldUpdater<Promise, Object> STATE = AtomicReferenceFieldUpdater.newUpdater(Promise.class, Object.class, "state");
+
+	static private final Object NULL_VALUE = new Object();
+	static final Object PRIMITIVE_VALUE = new Object();
+	static final Object CLAIM_FAILED = new Object();
+
+	static private final class Waiter {
+		final ResultRunnable callback;
+		final boolean valueless;
+		// Loop that registered the callback, the callback runs there
+		final EventLoop loop;
+		final Waiter next;
+
+		Waiter(ResultRunnable callback, boolean valueless, EventLoop loop, Waiter next) {
+			this.callback = callback;
+			this.valueless = valueless;
+			this.loop = loop;
+			this.next = next;
+		}
+	}
+
+	static private final class Completing {
+		final Waiter late;
+
+		Completing(Waiter late) {
+			this.late = late;
+		}
+	}
+
+	static private final Completing COMPLETING = new Completing(null);
 
 	public void then(ResultRunnable<T> callback) {
-		callbacks.add(callback);
-		checkResolved();
+		then(callback, false);
 	}
 
 	public void then(Runnable callback) {
-		callbacks.add((e) -> callback.run());
-		checkResolved();
+		then((e) -> callback.run());
+	}
+
+	// Continuation that only receives the rejection exception (or null) and reads the value back from the promise.
+	// Used by primitive awaits so the value is never boxed.
+	public void thenResume(ResultRunnable<Object> callback) {
+		then(callback, true);
+	}
+
+	private void then(ResultRunnable callback, boolean valueless) {
+		EventLoop loop = EventLoopHolder.current();
+		while (true) {
+			Object current = state;
+			if (current instanceof Completing) {
+				// publish dispatches these once the value is written
+				Completing late = new Completing(new Waiter(callback, valueless, loop, ((Completing) current).late));
+				if (STATE.compareAndSet(this, current, late)) return;
+			} else if (current == null || current instanceof Waiter) {
+				if (STATE.compareAndSet(this, current, new Waiter(callback, valueless, loop, (Waiter) current))) return;
+			} else {
+				dispatch(callback, valueless, loop, current);
+				return;
+			}
+		}
 	}
 
 	public void resolve(T value) {
-		if (resolved) return;
-		resolved = true;
-		resolvedValue = value;
-		checkResolved();
+		settle((value != null) ? value : NULL_VALUE);
 	}
 
 	public void reject(Exception exception) {
-		if (resolved) return;
-		resolved = true;
-		resolvedValue = exception;
-		checkResolved();
-	}
-
-	private void checkResolved() {
-		if (!resolved) return;
-		while (callbacks.peek() != null) {
-			final ResultRunnable callback = callbacks.poll();
-			EventLoopHolder.instance.enqueue(() -> {
-				callback.run(resolvedValue);
-			});
+		settle(exception);
+	}
+
+	public boolean isResolved() {
+		Object current = state;
+		return current != null && !(current instanceof Completing) && !(current instanceof Waiter);
+	}
+
+	// Value (or rejection exception) of a resolved promise, null while it is still pending.
+	public Object getResolvedValue() {
+		Object current = state;
+		if (current == null || current instanceof Completing || current instanceof Waiter) return null;
+		return getCallbackValue(current);
+	}
+
+	Object getCallbackValue(Object result) {
+		return (result != NULL_VALUE) ? result : null;
+	}
+
+	void rethrowRejection() {
+		Object current = state;
+		if (current instanceof Throwable) Promise.<RuntimeException>sneakyThrow((Throwable) current);
+	}
+
+	@SuppressWarnings("unchecked")
+	static private <E extends Throwable> void sneakyThrow(Throwable exception) throws E {
+		throw (E) exception;
+	}
+
+	// Primitive promises claim the promise, write their value and then publish PRIMITIVE_VALUE,
+	// so there is no boxed value to publish.
+	Object claim() {
+		while (true) {
+			Object current = state;
+			if (current != null && !(current instanceof Waiter)) return CLAIM_FAILED;
+			if (STATE.compareAndSet(this, current, COMPLETING)) return current;
+		}
+	}
+
+	void publish(Object waiters) {
+		Completing completing = (Completing) STATE.getAndSet(this, PRIMITIVE_VALUE);
+		dispatchAll((Waiter) waiters, PRIMITIVE_VALUE);
+		dispatchAll(completing.late, PRIMITIVE_VALUE);
+	}
+
+	private void settle(Object result) {
+		while (true) {
+			Object current = state;
+			if (current != null && !(current instanceof Waiter)) return;
+			if (STATE.compareAndSet(this, current, result)) {
+				dispatchAll((Waiter) current, result);
+				return;
+			}
+		}
+	}
+
+	private void dispatchAll(Waiter waiters, Object result) {
+		if (waiters != null && waiters.next != null) {
+			// The stack is LIFO, callbacks are run in registration order.
+			Waiter reversed = null;
+			for (Waiter waiter = waiters; waiter != null; waiter = waiter.next) {
+				reversed = new Waiter(waiter.callback, waiter.valueless, waiter.loop, reversed);
+			}
+			waiters = reversed;
+		}
+		for (Waiter waiter = waiters; waiter != null; waiter = waiter.next) {
+			dispatch(waiter.callback, waiter.valueless, waiter.loop, result);
 		}
 	}
 
+	private void dispatch(final ResultRunnable callback, boolean valueless, EventLoop loop, Object result) {
+		final Object value = valueless ? ((result instanceof Throwable) ? result : null) : getCallbackValue(result);
+		loop.enqueue(() -> {
+			callback.run(value);
+		});
+	}
+
 	static native public <T> T await(Promise<T> promise);
 
+	static native public int await(IntPromise promise);
+
+	static native public long await(LongPromise promise);
+
+	static native public double await(DoublePromise promise);
+
 	static native public <T> Promise<T> complete(T promise);
 
+	static native public IntPromise complete(int value);
+
+	static native public LongPromise complete(long value);
+
+	static native public DoublePromise complete(double value);
+
 	public static <T> Promise<T> resolved(T value) {
 		Promise<T> promise = new Promise<>();
 		promise.resolve(value);
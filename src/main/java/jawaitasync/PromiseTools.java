@@ -1,45 +1,52 @@
 package jawaitasync;
 
-import com.ning.http.client.AsyncCompletionHandler;
-import com.ning.http.client.AsyncHttpClient;
-import com.ning.http.client.Response;
 import com.ning.http.client.websocket.WebSocketListener;
 import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.Timeout;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelector;
 import java.nio.channels.spi.SelectorProvider;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 
 public class PromiseTools {
+	// Uses the shared client of the current loop group, connections are pooled and kept alive between calls.
 	static public Promise<String> downloadUrlAsync(String url) throws IOException {
-		Promise<String> promise = new Promise();
-
-		EventLoopHolder.instance.refCountInc();
+		return HttpClient.current().getStringAsync(url);
+	}
 
-		AsyncHttpClient asyncHttpClient = new AsyncHttpClient();
-		asyncHttpClient.prepareGet(url).execute(new AsyncCompletionHandler<Response>() {
+	static public Promise<byte[]> downloadUrlBytesAsync(String url) {
+		return HttpClient.current().getBytesAsync(url);
+	}
 
-			@Override
-			public Response onCompleted(Response response) throws Exception {
-				EventLoopHolder.instance.refCountDec();
-				promise.resolve(response.getResponseBody());
-				return response;
+	// Streams the body into the file, resolves to its length.
+	static public Promise<Long> downloadUrlToFileAsync(String url, Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		Promise<Long> promise = new Promise<>();
+		// Rejections arrive as the callback value, so the callback can't be typed as Long
+		Promise<?> download = HttpClient.current().downloadToAsync(url, channel);
+		((Promise<Object>) download).then((result) -> {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				if (!(result instanceof Exception)) result = e;
 			}
-
-			@Override
-			public void onThrowable(Throwable t) {
-				EventLoopHolder.instance.refCountDec();
-				promise.reject((Exception)t);
+			if (result instanceof Exception) {
+				promise.reject((Exception) result);
+			} else {
+				promise.resolve((Long) result);
 			}
 		});
-
 		return promise;
 	}
 
@@ -49,7 +56,7 @@ public class PromiseTools {
 
 	static public <T> Promise<T> sleepAsync(int milliseconds, final T result) {
 		Promise<T> promise = new Promise<>();
-		EventLoopHolder.instance.setTimeout(() -> {
+		EventLoopHolder.current().setTimeout(() -> {
 			promise.resolve(result);
 		}, milliseconds);
 		return promise;
@@ -57,29 +64,48 @@ public class PromiseTools {
 
 	static public Promise sleepAndThrowAsync(int milliseconds, Exception exception) {
 		Promise<?> promise = new Promise();
-		EventLoopHolder.instance.setTimeout(() -> {
+		EventLoopHolder.current().setTimeout(() -> {
 			promise.reject(exception);
 		}, milliseconds);
 		return promise;
 	}
 
+	// Rejects with a TimeoutException unless the promise settles within the given time.
+	static public <T> Promise<T> timeoutAsync(Promise<T> promise, int milliseconds) {
+		Promise<T> result = new Promise<>();
+		Timeout timeout = EventLoopHolder.current().setTimeout(() -> {
+			result.reject(new TimeoutException("Timed out after " + milliseconds + "ms"));
+		}, milliseconds);
+		promise.then((value) -> {
+			timeout.cancel();
+			if (value instanceof Exception) {
+				result.reject((Exception) value);
+			} else {
+				result.resolve(value);
+			}
+		});
+		return result;
+	}
+
+	// Runs on the blocking pool, the promise settles back on the calling loop.
 	static public <T> Promise<T> runTaskAsync(RunnableYieldingResult<T> callback) {
-		Promise<T> promise = new Promise<>();
-		// @TODO: Use ThreadPool
-		new Thread(() -> {
-			promise.resolve(callback.run());
-		}).start();
-		return promise;
+		return TaskPool.blocking().runAsync(callback);
 	}
 
 	static public Promise<?> runTaskAsync(Runnable callback) {
-		Promise<?> promise = new Promise<>();
-		// @TODO: Use ThreadPool
-		new Thread(() -> {
-			callback.run();
-			promise.resolve(null);
-		}).start();
-		return promise;
+		return TaskPool.blocking().runAsync(callback);
+	}
+
+	static public <T> Promise<T> runTaskAsync(TaskPool pool, RunnableYieldingResult<T> callback) {
+		return pool.runAsync(callback);
+	}
+
+	static public <T> Promise<T> runVirtualTaskAsync(RunnableYieldingResult<T> callback) {
+		return TaskPool.virtual().runAsync(callback);
+	}
+
+	static public <T> Promise<T> runCpuTaskAsync(RunnableYieldingResult<T> callback) {
+		return TaskPool.cpu().runAsync(callback);
 	}
 
 	static public void test() throws Exception {
@@ -0,0 +1,133 @@
+package jawaitasync;
+
+import jawaitasync.loop.EventLoop;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.VirtualThreads;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool for work that must not run on an event loop. The calling loop is kept alive while the task is pending,
+ * and the promise callbacks run back on the loops that registered them.
+ */
+public class TaskPool {
+	public enum RejectionPolicy {
+		// The promise is rejected with a RejectedExecutionException
+		REJECT,
+		// The task runs on the submitting thread, slowing the producer down. Blocks the loop when submitting from one.
+		// After shutdown the promise is rejected like with REJECT.
+		CALLER_RUNS
+	}
+
+	static private volatile TaskPool cpu;
+	static private volatile TaskPool blocking;
+	static private volatile TaskPool virtual;
+
+	// Sized to the cores, for computations. A full queue rejects instead of running the task on the calling loop.
+	static public TaskPool cpu() {
+		TaskPool pool = cpu;
+		if (pool == null) {
+			synchronized (TaskPool.class) {
+				if (cpu == null) cpu = new TaskPool("jawaitasync-cpu", Runtime.getRuntime().availableProcessors(), 16 * 1024, RejectionPolicy.REJECT);
+				pool = cpu;
+			}
+		}
+		return pool;
+	}
+
+	// Grows up to 256 threads that die after a minute idle, for blocking I/O.
+	static public TaskPool blocking() {
+		TaskPool pool = blocking;
+		if (pool == null) {
+			synchronized (TaskPool.class) {
+				if (blocking == null) blocking = new TaskPool("jawaitasync-blocking", 256, 16 * 1024, RejectionPolicy.REJECT);
+				pool = blocking;
+			}
+		}
+		return pool;
+	}
+
+	// A virtual thread per task when the JVM supports them, so blocking code doesn't hold platform threads.
+	static public TaskPool virtual() {
+		TaskPool pool = virtual;
+		if (pool == null) {
+			synchronized (TaskPool.class) {
+				if (virtual == null) virtual = new TaskPool(VirtualThreads.newPerTaskExecutor("jawaitasync-virtual"));
+				pool = virtual;
+			}
+		}
+		return pool;
+	}
+
+	synchronized static public void setCpu(TaskPool pool) {
+		cpu = pool;
+	}
+
+	synchronized static public void setBlocking(TaskPool pool) {
+		blocking = pool;
+	}
+
+	private final ExecutorService executor;
+
+	public TaskPool(String name, int maxThreads, int queueCapacity, RejectionPolicy policy) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(queueCapacity),
+			(r) -> {
+				Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			},
+			(policy == RejectionPolicy.CALLER_RUNS) ? TaskPool::runOnCaller : new ThreadPoolExecutor.AbortPolicy()
+		);
+		// Threads are only started when there is work and go away when idle
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+	}
+
+	public TaskPool(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	// CallerRunsPolicy drops the task silently once shut down, its promise would never settle
+	static private void runOnCaller(Runnable task, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) throw (new RejectedExecutionException("Task pool is shut down"));
+		task.run();
+	}
+
+	public <T> Promise<T> runAsync(RunnableYieldingResult<T> callback) {
+		Promise<T> promise = new Promise<>();
+		EventLoop loop = EventLoopHolder.current();
+		loop.refCountInc();
+		try {
+			executor.execute(() -> {
+				try {
+					promise.resolve(callback.run());
+				} catch (Exception e) {
+					promise.reject(e);
+				} catch (Throwable e) {
+					promise.reject(new ExecutionException(e));
+				} finally {
+					loop.refCountDec();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loop.refCountDec();
+			promise.reject(e);
+		}
+		return promise;
+	}
+
+	public Promise<?> runAsync(Runnable callback) {
+		return runAsync(() -> {
+			callback.run();
+			return null;
+		});
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,8 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+
+public interface HttpBodyWriter {
+	// Writes the body through output, the body ends once the promise resolves. A rejection cuts the connection.
+	Promise<?> writeTo(HttpChunkedOutput output) throws Exception;
+}
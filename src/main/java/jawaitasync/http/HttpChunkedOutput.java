@@ -0,0 +1,83 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+import jawaitasync.tools.AsyncSocket;
+import jawaitasync.tools.BufferPool;
+import jawaitasync.tools.PooledBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streamed response body. Every write goes out as one chunk and end writes the last one.
+ * Without chunked encoding (HTTP/1.0 clients) the bytes are written as they are and the body ends with the connection.
+ */
+public final class HttpChunkedOutput {
+	static private final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+	private final AsyncSocket socket;
+	private final BufferPool pool;
+	private final boolean chunked;
+	private boolean ended = false;
+
+	HttpChunkedOutput(AsyncSocket socket, BufferPool pool, boolean chunked) {
+		this.socket = socket;
+		this.pool = pool;
+		this.chunked = chunked;
+	}
+
+	public boolean isChunked() {
+		return chunked;
+	}
+
+	// Resolves once the kernel took the chunk, waiting for it keeps a slow client from buffering the whole body
+	public Promise<?> writeAsync(ByteBuffer data) {
+		Promise<?> promise = new Promise<>();
+		if (ended) {
+			promise.reject(new IllegalStateException("Body already ended"));
+			return promise;
+		}
+		// An empty chunk would end the body
+		if (!data.hasRemaining()) {
+			promise.resolve(null);
+			return promise;
+		}
+		if (!chunked) return socket.writeAsync(data);
+		int length = data.remaining();
+		boolean inline = length <= HttpResponseWriter.INLINE_BODY_SIZE;
+		// Size line, and small chunks are copied behind it along with their CRLF
+		PooledBuffer chunk = pool.acquire(inline ? length + 12 : 10);
+		ByteBuffer out = chunk.buffer();
+		HttpResponseWriter.putHex(out, length);
+		out.put(HttpResponseWriter.CRLF);
+		if (inline) {
+			out.put(data);
+			out.put(HttpResponseWriter.CRLF);
+		}
+		out.flip();
+		if (inline) return socket.writeAsync(chunk);
+		try {
+			socket.write(chunk).write(data);
+		} catch (IOException e) {
+			promise.reject(e);
+			return promise;
+		}
+		return socket.writeAsync(HttpResponseWriter.CRLF);
+	}
+
+	public Promise<?> writeAsync(byte[] data) {
+		return writeAsync(ByteBuffer.wrap(data));
+	}
+
+	public Promise<?> writeAsync(String data) {
+		return writeAsync(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Writes the last chunk. Further writes are rejected.
+	public void end() throws IOException {
+		if (ended) return;
+		ended = true;
+		if (chunked) socket.write(LAST_CHUNK);
+	}
+}
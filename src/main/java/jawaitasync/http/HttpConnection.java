@@ -0,0 +1,206 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoop;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.Timeout;
+import jawaitasync.tools.AsyncSocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+// One client connection. Reads the next requests while earlier ones are being handled and writes the responses in request order.
+final class HttpConnection {
+	static private final class Exchange {
+		final boolean keepAlive;
+		final boolean http10;
+		final boolean head;
+		HttpResponse response;
+
+		Exchange(boolean keepAlive, boolean http10, boolean head) {
+			this.keepAlive = keepAlive;
+			this.http10 = http10;
+			this.head = head;
+		}
+	}
+
+	private final HttpServer server;
+	private final AsyncSocket socket;
+	private final EventLoop loop;
+	private final HttpRequestDecoder decoder;
+	private final HttpResponseWriter writer;
+	// Requests being handled or whose response waits for an earlier one
+	private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+	private boolean reading = false;
+	// Responses are piling up in the socket, the next request is read once the client took them
+	private boolean waitingWritable = false;
+	// No more requests are read, the connection closes once the responses are written
+	private boolean closing = false;
+	private boolean closed = false;
+	// A streamed body is being written, later responses wait for it
+	private boolean streaming = false;
+	private Timeout idleTimer;
+
+	HttpConnection(HttpServer server, AsyncSocket socket) {
+		this.server = server;
+		this.socket = socket;
+		this.loop = EventLoopHolder.current();
+		this.decoder = new HttpRequestDecoder(server.getMaxHeaderSize(), server.getMaxBodySize());
+		this.writer = new HttpResponseWriter(socket);
+	}
+
+	void start() {
+		readNext();
+	}
+
+	private void readNext() {
+		if (reading || waitingWritable || closing || closed || exchanges.size() >= server.getMaxPipelined()) return;
+		if (!socket.isWritable()) {
+			waitingWritable = true;
+			((Promise<Object>) (Promise<?>) socket.writableAsync()).then((result) -> {
+				waitingWritable = false;
+				if (!(result instanceof Exception)) readNext();
+			});
+			return;
+		}
+		reading = true;
+		((Promise<Object>) (Promise<?>) socket.readFrameAsync(decoder)).then((result) -> {
+			reading = false;
+			if (result instanceof HttpException) {
+				HttpException error = (HttpException) result;
+				closing = true;
+				Exchange exchange = new Exchange(false, false, false);
+				exchange.response = new HttpResponse(error.getStatus()).setBody(error.getMessage());
+				exchanges.add(exchange);
+				writeReady();
+			} else if (result instanceof Exception) {
+				// The client is done sending, answer what it already sent
+				closing = true;
+				writeReady();
+			} else {
+				onRequest((HttpRequest) result);
+			}
+		});
+		updateIdleTimer();
+	}
+
+	private void onRequest(HttpRequest request) {
+		Exchange exchange = new Exchange(request.isKeepAlive(), "HTTP/1.0".equals(request.version), "HEAD".equals(request.method));
+		exchanges.add(exchange);
+		if (!exchange.keepAlive) closing = true;
+		updateIdleTimer();
+		readNext();
+		Promise<HttpResponse> promise;
+		try {
+			promise = server.getHandler().handle(request);
+		} catch (Exception e) {
+			respond(exchange, e);
+			return;
+		}
+		if (promise == null) {
+			respond(exchange, null);
+			return;
+		}
+		((Promise<Object>) (Promise<?>) promise).then((result) -> respond(exchange, result));
+	}
+
+	private void respond(Exchange exchange, Object result) {
+		if (result instanceof HttpResponse) {
+			exchange.response = (HttpResponse) result;
+		} else {
+			exchange.response = new HttpResponse(500);
+		}
+		writeReady();
+		if (result instanceof Exception) server.reportError((Exception) result);
+	}
+
+	private void writeReady() {
+		if (closed || streaming) return;
+		while (!exchanges.isEmpty() && exchanges.peek().response != null) {
+			Exchange exchange = exchanges.poll();
+			HttpResponse response = exchange.response;
+			try {
+				if (response.getBodyWriter() != null && !exchange.head && HttpStatus.hasBody(response.getStatus())) {
+					stream(exchange);
+					return;
+				}
+				writer.write(response, exchange.http10, exchange.keepAlive, exchange.head);
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			if (!exchange.keepAlive) {
+				close();
+				return;
+			}
+		}
+		if (closing && exchanges.isEmpty()) {
+			close();
+			return;
+		}
+		readNext();
+		updateIdleTimer();
+	}
+
+	// Later responses are written once the body ended
+	private void stream(Exchange exchange) throws IOException {
+		HttpChunkedOutput output = writer.writeStreamed(exchange.response, exchange.http10, exchange.keepAlive);
+		// Without chunked encoding the body ends with the connection
+		boolean keepAlive = exchange.keepAlive && output.isChunked();
+		streaming = true;
+		updateIdleTimer();
+		Promise<?> done;
+		try {
+			done = exchange.response.getBodyWriter().writeTo(output);
+		} catch (Exception e) {
+			done = new Promise<>();
+			done.reject(e);
+		}
+		if (done == null) done = Promise.resolved(null);
+		((Promise<Object>) (Promise<?>) done).then((result) -> {
+			streaming = false;
+			if (result instanceof Exception) {
+				// The head is already out, cutting the connection is the only way to tell the client
+				close();
+				server.reportError((Exception) result);
+				return;
+			}
+			try {
+				output.end();
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			if (!keepAlive) {
+				close();
+				return;
+			}
+			writeReady();
+		});
+	}
+
+	// Only runs while the connection waits for a request with nothing to answer
+	private void updateIdleTimer() {
+		boolean idle = exchanges.isEmpty() && !streaming && !closing && !closed;
+		if (idle && idleTimer == null && server.getIdleTimeout() > 0) {
+			idleTimer = loop.setTimeout(() -> {
+				idleTimer = null;
+				if (exchanges.isEmpty()) close();
+			}, server.getIdleTimeout());
+		} else if (!idle && idleTimer != null) {
+			idleTimer.cancel();
+			idleTimer = null;
+		}
+	}
+
+	private void close() {
+		if (closed) return;
+		closed = true;
+		closing = true;
+		updateIdleTimer();
+		try {
+			socket.close();
+		} catch (IOException e) {
+		}
+	}
+}
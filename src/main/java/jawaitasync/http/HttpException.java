@@ -0,0 +1,17 @@
+package jawaitasync.http;
+
+import java.io.IOException;
+
+// Malformed or oversized request, answered with status before the connection is closed
+public class HttpException extends IOException {
+	private final int status;
+
+	public HttpException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,8 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+
+public interface HttpHandler {
+	// Runs on the connection's loop. A rejected promise or an exception answers 500.
+	Promise<HttpResponse> handle(HttpRequest request) throws Exception;
+}
@@ -0,0 +1,119 @@
+package jawaitasync.http;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Well-known header names. Parsed names that match one (in any case) share its interned String,
+ * and HttpHeaders indexes fields by their id so looking them up doesn't scan.
+ */
+public final class HttpHeaderNames {
+	static public final String HOST = "Host";
+	static public final String CONNECTION = "Connection";
+	static public final String CONTENT_LENGTH = "Content-Length";
+	static public final String CONTENT_TYPE = "Content-Type";
+	static public final String TRANSFER_ENCODING = "Transfer-Encoding";
+	static public final String ACCEPT = "Accept";
+	static public final String ACCEPT_ENCODING = "Accept-Encoding";
+	static public final String ACCEPT_LANGUAGE = "Accept-Language";
+	static public final String USER_AGENT = "User-Agent";
+	static public final String COOKIE = "Cookie";
+	static public final String AUTHORIZATION = "Authorization";
+	static public final String CACHE_CONTROL = "Cache-Control";
+	static public final String PRAGMA = "Pragma";
+	static public final String UPGRADE = "Upgrade";
+	static public final String EXPECT = "Expect";
+	static public final String KEEP_ALIVE = "Keep-Alive";
+	static public final String REFERER = "Referer";
+	static public final String ORIGIN = "Origin";
+	static public final String IF_NONE_MATCH = "If-None-Match";
+	static public final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	static public final String RANGE = "Range";
+	static public final String TE = "TE";
+	static public final String TRAILER = "Trailer";
+	static public final String X_FORWARDED_FOR = "X-Forwarded-For";
+	static public final String X_REQUEST_ID = "X-Request-Id";
+	static public final String DATE = "Date";
+	static public final String SERVER = "Server";
+	static public final String CONTENT_ENCODING = "Content-Encoding";
+	static public final String SET_COOKIE = "Set-Cookie";
+	static public final String LOCATION = "Location";
+	static public final String LAST_MODIFIED = "Last-Modified";
+	static public final String ETAG = "ETag";
+
+	static private final String[] NAMES = {
+		HOST, CONNECTION, CONTENT_LENGTH, CONTENT_TYPE, TRANSFER_ENCODING, ACCEPT, ACCEPT_ENCODING, ACCEPT_LANGUAGE,
+		USER_AGENT, COOKIE, AUTHORIZATION, CACHE_CONTROL, PRAGMA, UPGRADE, EXPECT, KEEP_ALIVE, REFERER, ORIGIN,
+		IF_NONE_MATCH, IF_MODIFIED_SINCE, RANGE, TE, TRAILER, X_FORWARDED_FOR, X_REQUEST_ID, DATE, SERVER,
+		CONTENT_ENCODING, SET_COOKIE, LOCATION, LAST_MODIFIED, ETAG,
+	};
+	static private final byte[][] LOWER_NAMES = new byte[NAMES.length][];
+	// "Name: " as written in responses
+	static private final byte[][] PREFIXES = new byte[NAMES.length][];
+	// Open addressing on the hash of the lower case name, -1 for empty slots
+	static private final int TABLE_MASK = 127;
+	static private final int[] TABLE = new int[TABLE_MASK + 1];
+
+	static final int COUNT = NAMES.length;
+
+	static {
+		java.util.Arrays.fill(TABLE, -1);
+		for (int id = 0; id < NAMES.length; id++) {
+			LOWER_NAMES[id] = NAMES[id].toLowerCase().getBytes(StandardCharsets.ISO_8859_1);
+			PREFIXES[id] = (NAMES[id] + ": ").getBytes(StandardCharsets.ISO_8859_1);
+			int slot = hash(LOWER_NAMES[id], 0, LOWER_NAMES[id].length) & TABLE_MASK;
+			while (TABLE[slot] >= 0) slot = (slot + 1) & TABLE_MASK;
+			TABLE[slot] = id;
+		}
+	}
+
+	private HttpHeaderNames() {
+	}
+
+	static private int lower(int c) {
+		return (c >= 'A' && c <= 'Z') ? (c | 0x20) : c;
+	}
+
+	static private int hash(byte[] bytes, int offset, int length) {
+		int hash = length;
+		for (int n = 0; n < length; n++) hash = hash * 31 + lower(bytes[offset + n] & 0xFF);
+		return hash ^ (hash >>> 16);
+	}
+
+	static private int hash(String name) {
+		int hash = name.length();
+		for (int n = 0; n < name.length(); n++) hash = hash * 31 + lower(name.charAt(n));
+		return hash ^ (hash >>> 16);
+	}
+
+	// Id of the well-known name spelled by the bytes, -1 when there is none
+	static int find(byte[] bytes, int offset, int length) {
+		for (int slot = hash(bytes, offset, length) & TABLE_MASK; TABLE[slot] >= 0; slot = (slot + 1) & TABLE_MASK) {
+			byte[] candidate = LOWER_NAMES[TABLE[slot]];
+			if (candidate.length != length) continue;
+			int n = 0;
+			while (n < length && candidate[n] == lower(bytes[offset + n] & 0xFF)) n++;
+			if (n == length) return TABLE[slot];
+		}
+		return -1;
+	}
+
+	static int find(String name) {
+		int length = name.length();
+		for (int slot = hash(name) & TABLE_MASK; TABLE[slot] >= 0; slot = (slot + 1) & TABLE_MASK) {
+			byte[] candidate = LOWER_NAMES[TABLE[slot]];
+			if (candidate.length != length) continue;
+			int n = 0;
+			while (n < length && candidate[n] == lower(name.charAt(n))) n++;
+			if (n == length) return TABLE[slot];
+		}
+		return -1;
+	}
+
+	static String name(int id) {
+		return NAMES[id];
+	}
+
+	static byte[] prefix(int id) {
+		return PREFIXES[id];
+	}
+}
@@ -0,0 +1,242 @@
+package jawaitasync.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Header fields in arrival order. Lookups ignore the case of names.
+ * Parsed values stay slices of the received head and only become Strings when read,
+ * and well-known names are indexed so finding them doesn't scan the fields.
+ */
+public class HttpHeaders {
+	private String[] names = new String[16];
+	private String[] values = new String[16];
+	// Well-known name id of each field, -1 for other names
+	private int[] ids = new int[16];
+	private int[] valueOffsets = new int[16];
+	private int[] valueLengths = new int[16];
+	// Head the value slices point into
+	private byte[] source;
+	private int size = 0;
+	// First field of each well-known name, -1 when absent
+	private final int[] firstIndex = new int[HttpHeaderNames.COUNT];
+
+	public HttpHeaders() {
+		Arrays.fill(firstIndex, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String getName(int index) {
+		checkIndex(index);
+		return names[index];
+	}
+
+	public String getValue(int index) {
+		checkIndex(index);
+		String value = values[index];
+		if (value == null) value = values[index] = new String(source, valueOffsets[index], valueLengths[index], StandardCharsets.ISO_8859_1);
+		return value;
+	}
+
+	// Well-known name id of the field, -1 for other names
+	int getId(int index) {
+		checkIndex(index);
+		return ids[index];
+	}
+
+	// Throws IllegalArgumentException for names that aren't tokens and values with CR or LF, they could split the response
+	public HttpHeaders add(String name, String value) {
+		checkName(name);
+		checkValue(value);
+		int index = append(name, HttpHeaderNames.find(name));
+		values[index] = value;
+		return this;
+	}
+
+	// Parsed field, the value is decoded on first access
+	void addSlice(String name, int id, byte[] source, int offset, int length) {
+		this.source = source;
+		int index = append(name, id);
+		valueOffsets[index] = offset;
+		valueLengths[index] = length;
+	}
+
+	private int append(String name, int id) {
+		if (size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+			valueLengths = Arrays.copyOf(valueLengths, capacity);
+		}
+		int index = size++;
+		names[index] = name;
+		values[index] = null;
+		ids[index] = id;
+		if (id >= 0 && firstIndex[id] < 0) firstIndex[id] = index;
+		return index;
+	}
+
+	// Replaces every field with that name
+	public HttpHeaders set(String name, String value) {
+		checkName(name);
+		checkValue(value);
+		remove(name);
+		return add(name, value);
+	}
+
+	public void remove(String name) {
+		int id = HttpHeaderNames.find(name);
+		int kept = 0;
+		for (int n = 0; n < size; n++) {
+			if (matches(n, id, name)) continue;
+			names[kept] = names[n];
+			values[kept] = values[n];
+			ids[kept] = ids[n];
+			valueOffsets[kept] = valueOffsets[n];
+			valueLengths[kept] = valueLengths[n];
+			kept++;
+		}
+		if (kept == size) return;
+		Arrays.fill(names, kept, size, null);
+		Arrays.fill(values, kept, size, null);
+		size = kept;
+		Arrays.fill(firstIndex, -1);
+		for (int n = size - 1; n >= 0; n--) {
+			if (ids[n] >= 0) firstIndex[ids[n]] = n;
+		}
+	}
+
+	private boolean matches(int index, int id, String name) {
+		return (id >= 0) ? (ids[index] == id) : (ids[index] < 0 && names[index].equalsIgnoreCase(name));
+	}
+
+	// First field with that name, -1 when missing
+	public int indexOf(String name) {
+		int id = HttpHeaderNames.find(name);
+		if (id >= 0) return firstIndex[id];
+		for (int n = 0; n < size; n++) {
+			if (ids[n] < 0 && names[n].equalsIgnoreCase(name)) return n;
+		}
+		return -1;
+	}
+
+	// First value, null when missing
+	public String get(String name) {
+		int index = indexOf(name);
+		return (index >= 0) ? getValue(index) : null;
+	}
+
+	public boolean contains(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	// Whether a comma separated field like Connection or Transfer-Encoding lists token
+	public boolean containsToken(String name, String token) {
+		int first = indexOf(name);
+		if (first < 0) return false;
+		int id = ids[first];
+		for (int n = first; n < size; n++) {
+			if (matches(n, id, name) && valueContainsToken(n, token)) return true;
+		}
+		return false;
+	}
+
+	private boolean valueContainsToken(int index, String token) {
+		String value = values[index];
+		if (value != null) {
+			for (String part : value.split(",")) {
+				if (part.trim().equalsIgnoreCase(token)) return true;
+			}
+			return false;
+		}
+		// Straight on the slice, without decoding it
+		int end = valueOffsets[index] + valueLengths[index];
+		int start = valueOffsets[index];
+		while (start <= end) {
+			int comma = start;
+			while (comma < end && source[comma] != ',') comma++;
+			int from = start, to = comma;
+			while (from < to && (source[from] == ' ' || source[from] == '\t')) from++;
+			while (to > from && (source[to - 1] == ' ' || source[to - 1] == '\t')) to--;
+			if (to - from == token.length()) {
+				int n = 0;
+				while (n < token.length() && Character.toLowerCase((char) (source[from + n] & 0xFF)) == Character.toLowerCase(token.charAt(n))) n++;
+				if (n == token.length()) return true;
+			}
+			start = comma + 1;
+		}
+		return false;
+	}
+
+	// Last element of a comma separated field across all its lines, null when missing
+	String lastToken(String name) {
+		int id = HttpHeaderNames.find(name);
+		String last = null;
+		for (int n = 0; n < size; n++) {
+			if (!matches(n, id, name)) continue;
+			for (String part : getValue(n).split(",")) {
+				part = part.trim();
+				if (!part.isEmpty()) last = part;
+			}
+		}
+		return last;
+	}
+
+	// Decimal value of a field, -1 when it isn't a non-negative number
+	long getLong(int index) {
+		checkIndex(index);
+		String value = values[index];
+		if (value != null) {
+			try {
+				long result = Long.parseLong(value.trim());
+				return (result >= 0) ? result : -1;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		int length = valueLengths[index];
+		if (length == 0 || length > 18) return -1;
+		long result = 0;
+		for (int n = valueOffsets[index], end = n + length; n < end; n++) {
+			int digit = source[n] - '0';
+			if (digit < 0 || digit > 9) return -1;
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	static boolean isTokenChar(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || (c > 0 && c < 0x7F && "!#$%&'*+-.^_`|~".indexOf(c) >= 0);
+	}
+
+	static private void checkName(String name) {
+		if (name.isEmpty()) throw (new IllegalArgumentException("Empty header name"));
+		for (int n = 0; n < name.length(); n++) {
+			if (!isTokenChar(name.charAt(n))) throw (new IllegalArgumentException("Invalid header name: " + name));
+		}
+	}
+
+	static void checkValue(String value) {
+		for (int n = 0; n < value.length(); n++) {
+			char c = value.charAt(n);
+			if (c == '\r' || c == '\n') throw (new IllegalArgumentException("CR or LF in header value"));
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		Arrays.fill(firstIndex, -1);
+		source = null;
+		size = 0;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) throw (new IndexOutOfBoundsException("index " + index + ", size " + size));
+	}
+}
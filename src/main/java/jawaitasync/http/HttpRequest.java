@@ -0,0 +1,48 @@
+package jawaitasync.http;
+
+public class HttpRequest {
+	static private final byte[] EMPTY = new byte[0];
+
+	String method;
+	String target;
+	String version;
+	final HttpHeaders headers = new HttpHeaders();
+	byte[] body = EMPTY;
+
+	public String getMethod() {
+		return method;
+	}
+
+	// Request target as sent, path and query
+	public String getTarget() {
+		return target;
+	}
+
+	public String getPath() {
+		int query = target.indexOf('?');
+		return (query >= 0) ? target.substring(0, query) : target;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	// Content-Length or dechunked body, empty when there is none
+	public byte[] getBody() {
+		return body;
+	}
+
+	// HTTP/1.1 keeps the connection unless asked not to, HTTP/1.0 only when asked to
+	public boolean isKeepAlive() {
+		if (headers.containsToken("Connection", "close")) return false;
+		return "HTTP/1.1".equals(version) || headers.containsToken("Connection", "keep-alive");
+	}
+}
@@ -0,0 +1,262 @@
+package jawaitasync.http;
+
+import jawaitasync.tools.FrameDecoder;
+import jawaitasync.tools.ReadQueue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads one request per decode with AsyncSocket.readFrameAsync: head, then a Content-Length or chunked body.
+ * The head is located with a word-at-a-time newline search across the queued buffers, copied once and parsed
+ * in a single pass over its bytes. Keeps its progress between calls, so each connection needs its own decoder.
+ */
+public class HttpRequestDecoder implements FrameDecoder<HttpRequest> {
+	static private final int HEAD = 0;
+	static private final int FIXED_BODY = 1;
+	static private final int CHUNK_SIZE = 2;
+	static private final int CHUNK_DATA = 3;
+	static private final int TRAILERS = 4;
+	static private final int MAX_CHUNK_LINE = 1024;
+
+	static private final String[] METHODS = { "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH" };
+	static private final byte[][] METHOD_BYTES = new byte[METHODS.length][];
+	static private final String HTTP_1_1 = "HTTP/1.1";
+	static private final String HTTP_1_0 = "HTTP/1.0";
+	static private final byte[] VERSION_PREFIX = "HTTP/1.".getBytes(StandardCharsets.ISO_8859_1);
+
+	static {
+		for (int n = 0; n < METHODS.length; n++) METHOD_BYTES[n] = METHODS[n].getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private final int maxHeaderSize;
+	private final int maxBodySize;
+	private int state = HEAD;
+	private HttpRequest request;
+	// Head or trailer search progress: bytes already searched and start of the current line
+	private int scanned = 0;
+	private int lineStart = 0;
+	private int bodyLength;
+	private int chunkLength;
+	private ByteArrayOutputStream chunkedBody;
+
+	public HttpRequestDecoder() {
+		this(HttpServer.DEFAULT_MAX_HEADER_SIZE, HttpServer.DEFAULT_MAX_BODY_SIZE);
+	}
+
+	public HttpRequestDecoder(int maxHeaderSize, int maxBodySize) {
+		this.maxHeaderSize = maxHeaderSize;
+		this.maxBodySize = maxBodySize;
+	}
+
+	@Override
+	public HttpRequest decode(ReadQueue input) throws IOException {
+		while (true) {
+			switch (state) {
+				case HEAD: {
+					int end = findBlockEnd(input, true);
+					if (end < 0) return null;
+					byte[] head = input.getBytes(end);
+					request = new HttpRequest();
+					int fieldsStart = parseRequestLine(head);
+					parseFields(head, fieldsStart, end, true);
+					// RFC 7230 3.3.3: any framing the next hop could read differently is rejected, requests can't be smuggled
+					HttpHeaders headers = request.headers;
+					int contentLength = headers.indexOf(HttpHeaderNames.CONTENT_LENGTH);
+					if (headers.contains(HttpHeaderNames.TRANSFER_ENCODING)) {
+						if (contentLength >= 0) throw (new HttpException(400, "Both Transfer-Encoding and Content-Length"));
+						if (!"chunked".equalsIgnoreCase(headers.lastToken(HttpHeaderNames.TRANSFER_ENCODING))) throw (new HttpException(400, "Transfer-Encoding doesn't end with chunked"));
+						chunkedBody = new ByteArrayOutputStream();
+						state = CHUNK_SIZE;
+					} else {
+						if (contentLength < 0) return complete();
+						long length = contentLength(headers, contentLength);
+						if (length > maxBodySize) throw (new HttpException(413, "Body exceeds " + maxBodySize + " bytes"));
+						bodyLength = (int) length;
+						state = FIXED_BODY;
+					}
+					break;
+				}
+				case FIXED_BODY:
+					if (input.available() < bodyLength) return null;
+					request.body = input.getBytes(bodyLength);
+					return complete();
+				case CHUNK_SIZE: {
+					int index = input.indexOf((byte) '\n', scanned);
+					if (index < 0) {
+						scanned = input.available();
+						if (scanned > MAX_CHUNK_LINE) throw (new HttpException(400, "Invalid chunk size"));
+						return null;
+					}
+					scanned = 0;
+					chunkLength = parseChunkSize(input, index);
+					input.skip(index + 1);
+					if (chunkedBody.size() + (long) chunkLength > maxBodySize) throw (new HttpException(413, "Body exceeds " + maxBodySize + " bytes"));
+					state = (chunkLength == 0) ? TRAILERS : CHUNK_DATA;
+					break;
+				}
+				case CHUNK_DATA:
+					// Data and its CRLF
+					if (input.available() < chunkLength + 2) return null;
+					if (input.getByte(chunkLength) != '\r' || input.getByte(chunkLength + 1) != '\n') throw (new HttpException(400, "Chunk data doesn't end with CRLF"));
+					byte[] chunk = input.getBytes(chunkLength);
+					chunkedBody.write(chunk, 0, chunk.length);
+					input.skip(2);
+					state = CHUNK_SIZE;
+					break;
+				case TRAILERS: {
+					int end = findBlockEnd(input, false);
+					if (end < 0) return null;
+					byte[] trailers = input.getBytes(end);
+					parseFields(trailers, 0, end, false);
+					request.body = chunkedBody.toByteArray();
+					chunkedBody = null;
+					return complete();
+				}
+				default:
+					throw (new IllegalStateException());
+			}
+		}
+	}
+
+	// Length of the block up to and including its blank line, -1 while it isn't complete.
+	// Each byte is searched once however the block arrives.
+	private int findBlockEnd(ReadQueue input, boolean skipLeadingEmptyLines) throws HttpException {
+		while (true) {
+			int index = input.indexOf((byte) '\n', scanned);
+			if (index < 0) {
+				scanned = input.available();
+				if (scanned > maxHeaderSize) throw (new HttpException(431, "Header exceeds " + maxHeaderSize + " bytes"));
+				return -1;
+			}
+			if (index >= maxHeaderSize) throw (new HttpException(431, "Header exceeds " + maxHeaderSize + " bytes"));
+			int lineLength = index - lineStart;
+			boolean empty = lineLength == 0 || (lineLength == 1 && input.getByte(lineStart) == '\r');
+			if (empty && (lineStart > 0 || !skipLeadingEmptyLines)) {
+				scanned = lineStart = 0;
+				return index + 1;
+			}
+			if (empty) {
+				// Robust servers ignore empty lines before a request
+				input.skip(index + 1);
+				scanned = lineStart = 0;
+			} else {
+				scanned = lineStart = index + 1;
+			}
+		}
+	}
+
+	// Offset of the line after the request line
+	private int parseRequestLine(byte[] head) throws HttpException {
+		int end = indexOf(head, (byte) '\n', 0, head.length);
+		int lineEnd = (end > 0 && head[end - 1] == '\r') ? end - 1 : end;
+		int firstSpace = indexOf(head, (byte) ' ', 0, lineEnd);
+		int secondSpace = (firstSpace < 0) ? -1 : indexOf(head, (byte) ' ', firstSpace + 1, lineEnd);
+		if (firstSpace <= 0 || secondSpace <= firstSpace + 1 || indexOf(head, (byte) ' ', secondSpace + 1, lineEnd) >= 0) throw (new HttpException(400, "Invalid request line"));
+		request.method = method(head, firstSpace);
+		request.target = new String(head, firstSpace + 1, secondSpace - firstSpace - 1, StandardCharsets.ISO_8859_1);
+		request.version = version(head, secondSpace + 1, lineEnd);
+		return end + 1;
+	}
+
+	static private String method(byte[] head, int length) {
+		for (int n = 0; n < METHOD_BYTES.length; n++) {
+			if (equals(head, 0, length, METHOD_BYTES[n])) return METHODS[n];
+		}
+		return new String(head, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	static private String version(byte[] head, int start, int end) throws HttpException {
+		if (end - start != 8 || !equals(head, start, 7, VERSION_PREFIX)) throw (new HttpException(400, "Unsupported version"));
+		if (head[start + 7] == '1') return HTTP_1_1;
+		if (head[start + 7] == '0') return HTTP_1_0;
+		throw (new HttpException(400, "Unsupported version"));
+	}
+
+	// Header lines from start up to the blank line before end
+	private void parseFields(byte[] block, int start, int end, boolean slices) throws HttpException {
+		HttpHeaders headers = request.headers;
+		int lineStart = start;
+		while (lineStart < end) {
+			int newline = indexOf(block, (byte) '\n', lineStart, end);
+			int lineEnd = (newline > lineStart && block[newline - 1] == '\r') ? newline - 1 : newline;
+			if (lineEnd == lineStart) break;
+			// Obsolete line folding isn't accepted
+			if (block[lineStart] == ' ' || block[lineStart] == '\t') throw (new HttpException(400, "Invalid header line"));
+			int colon = indexOf(block, (byte) ':', lineStart, lineEnd);
+			// No whitespace is allowed between the name and the colon
+			if (colon <= lineStart || block[colon - 1] == ' ' || block[colon - 1] == '\t') throw (new HttpException(400, "Invalid header line"));
+			for (int n = lineStart; n < colon; n++) {
+				if (!HttpHeaders.isTokenChar(block[n] & 0xFF)) throw (new HttpException(400, "Invalid header name"));
+			}
+			int valueStart = colon + 1;
+			int valueEnd = lineEnd;
+			while (valueStart < valueEnd && (block[valueStart] == ' ' || block[valueStart] == '\t')) valueStart++;
+			while (valueEnd > valueStart && (block[valueEnd - 1] == ' ' || block[valueEnd - 1] == '\t')) valueEnd--;
+			int id = HttpHeaderNames.find(block, lineStart, colon - lineStart);
+			String name = (id >= 0) ? HttpHeaderNames.name(id) : new String(block, lineStart, colon - lineStart, StandardCharsets.ISO_8859_1);
+			if (slices) {
+				headers.addSlice(name, id, block, valueStart, valueEnd - valueStart);
+			} else {
+				try {
+					headers.add(name, new String(block, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1));
+				} catch (IllegalArgumentException e) {
+					throw (new HttpException(400, "Invalid header line"));
+				}
+			}
+			lineStart = newline + 1;
+		}
+	}
+
+	// Repeated fields must all carry the same value
+	static private long contentLength(HttpHeaders headers, int first) throws HttpException {
+		long length = headers.getLong(first);
+		if (length < 0) throw (new HttpException(400, "Invalid Content-Length"));
+		int id = headers.getId(first);
+		for (int n = first + 1; n < headers.size(); n++) {
+			if (headers.getId(n) == id && headers.getLong(n) != length) throw (new HttpException(400, "Conflicting Content-Length"));
+		}
+		return length;
+	}
+
+	// Hex size before any extension, the line ends at index
+	static private int parseChunkSize(ReadQueue input, int index) throws HttpException {
+		long size = 0;
+		int digits = 0;
+		for (int n = 0; n < index; n++) {
+			int c = input.getByte(n);
+			int digit = Character.digit(c, 16);
+			if (digit < 0) {
+				if (c == ';' || c == '\r' || c == ' ' || c == '\t') break;
+				throw (new HttpException(400, "Invalid chunk size"));
+			}
+			size = size * 16 + digit;
+			if (++digits > 8 || size > Integer.MAX_VALUE) throw (new HttpException(400, "Invalid chunk size"));
+		}
+		if (digits == 0) throw (new HttpException(400, "Invalid chunk size"));
+		return (int) size;
+	}
+
+	static private int indexOf(byte[] bytes, byte value, int start, int end) {
+		for (int n = start; n < end; n++) {
+			if (bytes[n] == value) return n;
+		}
+		return -1;
+	}
+
+	static private boolean equals(byte[] bytes, int offset, int length, byte[] expected) {
+		if (length != expected.length) return false;
+		for (int n = 0; n < length; n++) {
+			if (bytes[offset + n] != expected[n]) return false;
+		}
+		return true;
+	}
+
+	private HttpRequest complete() {
+		HttpRequest result = request;
+		request = null;
+		state = HEAD;
+		return result;
+	}
+}
@@ -0,0 +1,80 @@
+package jawaitasync.http;
+
+import java.nio.charset.StandardCharsets;
+
+public class HttpResponse {
+	static private final byte[] EMPTY = new byte[0];
+
+	private int status = 200;
+	private String reason;
+	private final HttpHeaders headers = new HttpHeaders();
+	private byte[] body = EMPTY;
+	private HttpBodyWriter bodyWriter;
+
+	public HttpResponse() {
+	}
+
+	public HttpResponse(int status) {
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public HttpResponse setStatus(int status) {
+		this.status = status;
+		return this;
+	}
+
+	// Standard reason phrase of the status when not set
+	public String getReason() {
+		return (reason != null) ? reason : HttpStatus.reason(status);
+	}
+
+	boolean hasStandardReason() {
+		return reason == null;
+	}
+
+	// Throws IllegalArgumentException when it contains CR or LF
+	public HttpResponse setReason(String reason) {
+		HttpHeaders.checkValue(reason);
+		this.reason = reason;
+		return this;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	public HttpResponse setHeader(String name, String value) {
+		headers.set(name, value);
+		return this;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	// Content-Length is added when the response is written
+	public HttpResponse setBody(byte[] body) {
+		this.body = body;
+		this.bodyWriter = null;
+		return this;
+	}
+
+	public HttpResponse setBody(String body) {
+		return setBody(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public HttpBodyWriter getBodyWriter() {
+		return bodyWriter;
+	}
+
+	// Body produced while it is being sent, with chunked transfer encoding instead of a Content-Length
+	public HttpResponse setBodyWriter(HttpBodyWriter bodyWriter) {
+		this.body = EMPTY;
+		this.bodyWriter = bodyWriter;
+		return this;
+	}
+}
@@ -0,0 +1,151 @@
+package jawaitasync.http;
+
+import jawaitasync.tools.AsyncSocket;
+import jawaitasync.tools.BufferPool;
+import jawaitasync.tools.PooledBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes responses straight into pooled buffers. Status lines and header names come from cached bytes and numbers
+ * are written as digits without going through Strings. Head and body are queued together so they leave the socket
+ * with one gathering write.
+ */
+public final class HttpResponseWriter {
+	// Bodies up to this size are copied behind the head instead of being written as a buffer of their own
+	static public final int INLINE_BODY_SIZE = 1024;
+
+	static final byte[] CRLF = {'\r', '\n'};
+	static private final byte[] CONTENT_LENGTH = HttpHeaderNames.prefix(HttpHeaderNames.find(HttpHeaderNames.CONTENT_LENGTH));
+	static private final byte[] CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+	static private final byte[] CONNECTION_CLOSE = ascii("Connection: close\r\n");
+	static private final byte[] CONNECTION_KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+	// Framing headers are always written from the response itself
+	static private final int CONTENT_LENGTH_ID = HttpHeaderNames.find(HttpHeaderNames.CONTENT_LENGTH);
+	static private final int CONNECTION_ID = HttpHeaderNames.find(HttpHeaderNames.CONNECTION);
+	static private final int TRANSFER_ENCODING_ID = HttpHeaderNames.find(HttpHeaderNames.TRANSFER_ENCODING);
+	// Status lines with the standard reason phrase, indexed by status
+	static private final byte[][] STATUS_LINES_10 = new byte[600][];
+	static private final byte[][] STATUS_LINES_11 = new byte[600][];
+	static private final byte[] HEX = ascii("0123456789abcdef");
+
+	static {
+		for (int status : HttpStatus.CODES) {
+			STATUS_LINES_10[status] = statusLine("HTTP/1.0", status, HttpStatus.reason(status));
+			STATUS_LINES_11[status] = statusLine("HTTP/1.1", status, HttpStatus.reason(status));
+		}
+	}
+
+	private final AsyncSocket socket;
+	private final BufferPool pool;
+
+	public HttpResponseWriter(AsyncSocket socket) {
+		this(socket, BufferPool.DEFAULT);
+	}
+
+	public HttpResponseWriter(AsyncSocket socket, BufferPool pool) {
+		this.socket = socket;
+		this.pool = pool;
+	}
+
+	// Queues the whole response. The body is left out for HEAD requests, statuses without a body and streamed bodies,
+	// those go through writeStreamed.
+	public void write(HttpResponse response, boolean http10, boolean keepAlive, boolean headRequest) throws IOException {
+		boolean streamed = response.getBodyWriter() != null;
+		byte[] body = response.getBody();
+		boolean sendBody = !headRequest && !streamed && HttpStatus.hasBody(response.getStatus());
+		boolean inline = sendBody && body.length <= INLINE_BODY_SIZE;
+		PooledBuffer head = encodeHead(response, http10, keepAlive, streamed ? -1 : body.length, inline ? body.length : 0);
+		if (inline) head.buffer().put(body);
+		head.buffer().flip();
+		socket.write(head);
+		if (sendBody && !inline) socket.write(body);
+	}
+
+	// Queues the head of a response whose body goes through the returned output.
+	// HTTP/1.0 clients don't know chunked encoding, their body ends with the connection so keepAlive is ignored.
+	public HttpChunkedOutput writeStreamed(HttpResponse response, boolean http10, boolean keepAlive) throws IOException {
+		PooledBuffer head = encodeHead(response, http10, keepAlive && !http10, -1, 0);
+		head.buffer().flip();
+		socket.write(head);
+		return new HttpChunkedOutput(socket, pool, !http10);
+	}
+
+	// contentLength -1 announces a chunked body, extra is room left behind the head
+	private PooledBuffer encodeHead(HttpResponse response, boolean http10, boolean keepAlive, long contentLength, int extra) {
+		HttpHeaders headers = response.getHeaders();
+		byte[] statusLine = null;
+		int status = response.getStatus();
+		if (response.hasStandardReason() && status >= 0 && status < 600) statusLine = http10 ? STATUS_LINES_10[status] : STATUS_LINES_11[status];
+		if (statusLine == null) statusLine = statusLine(http10 ? "HTTP/1.0" : "HTTP/1.1", status, response.getReason());
+		// Framing and Connection headers plus the blank line take at most 64 bytes
+		int size = statusLine.length + 64 + extra;
+		for (int n = 0; n < headers.size(); n++) size += headers.getName(n).length() + headers.getValue(n).length() + 4;
+		PooledBuffer head = pool.acquire(size);
+		ByteBuffer out = head.buffer();
+		out.put(statusLine);
+		for (int n = 0; n < headers.size(); n++) {
+			int id = headers.getId(n);
+			if (id == CONTENT_LENGTH_ID || id == CONNECTION_ID || id == TRANSFER_ENCODING_ID) continue;
+			if (id >= 0) {
+				out.put(HttpHeaderNames.prefix(id));
+			} else {
+				putAscii(out, headers.getName(n));
+				out.put((byte) ':').put((byte) ' ');
+			}
+			putAscii(out, headers.getValue(n));
+			out.put(CRLF);
+		}
+		// Bodiless statuses get no framing headers. A 304 could repeat the length of the 200, which isn't known here.
+		if (HttpStatus.hasBody(status)) {
+			if (contentLength >= 0) {
+				out.put(CONTENT_LENGTH);
+				putDecimal(out, contentLength);
+				out.put(CRLF);
+			} else if (!http10) {
+				out.put(CHUNKED);
+			}
+		}
+		if (!keepAlive) {
+			out.put(CONNECTION_CLOSE);
+		} else if (http10) {
+			out.put(CONNECTION_KEEP_ALIVE);
+		}
+		out.put(CRLF);
+		return head;
+	}
+
+	static private byte[] statusLine(String version, int status, String reason) {
+		return ascii(version + " " + status + " " + reason + "\r\n");
+	}
+
+	static private byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	// Characters outside Latin-1 can't be sent in a header and become '?'
+	static void putAscii(ByteBuffer out, String text) {
+		for (int n = 0; n < text.length(); n++) {
+			char c = text.charAt(n);
+			out.put((c <= 0xFF) ? (byte) c : (byte) '?');
+		}
+	}
+
+	static void putDecimal(ByteBuffer out, long value) {
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+		int position = out.position();
+		for (int n = digits - 1; n >= 0; n--) {
+			out.put(position + n, (byte) ('0' + (value % 10)));
+			value /= 10;
+		}
+		out.position(position + digits);
+	}
+
+	static void putHex(ByteBuffer out, int value) {
+		int digits = Math.max(1, (35 - Integer.numberOfLeadingZeros(value)) / 4);
+		for (int n = digits - 1; n >= 0; n--) out.put(HEX[(value >>> (n * 4)) & 0xF]);
+	}
+}
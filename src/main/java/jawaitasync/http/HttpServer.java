@@ -0,0 +1,138 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+import jawaitasync.tools.AsyncSocket;
+import jawaitasync.tools.AsyncSocketAcceptor;
+import jawaitasync.tools.AsyncSocketListener;
+import jawaitasync.tools.SocketOptions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * HTTP/1.1 server with persistent connections and pipelining. Requests of a connection are read ahead
+ * up to maxPipelined and their responses are written in order. Bodies may use Content-Length or chunked encoding.
+ * Runs on the current loop with bindAsync, or on a worker group as the handler of an AsyncSocketAcceptor.
+ */
+public class HttpServer implements AsyncSocketAcceptor.Handler {
+	public interface ErrorHandler {
+		// Runs on the connection's loop after the 500 response or the cut connection
+		void onError(Exception exception);
+	}
+
+	static public final int DEFAULT_MAX_HEADER_SIZE = 16 * 1024;
+	static public final int DEFAULT_MAX_BODY_SIZE = 10 * 1024 * 1024;
+	static public final int DEFAULT_IDLE_TIMEOUT = 60_000;
+	static public final int DEFAULT_MAX_PIPELINED = 16;
+
+	private final HttpHandler handler;
+	private int maxHeaderSize = DEFAULT_MAX_HEADER_SIZE;
+	private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+	private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private int maxPipelined = DEFAULT_MAX_PIPELINED;
+	private ErrorHandler errorHandler;
+	private AsyncSocketListener listener;
+
+	public HttpServer(HttpHandler handler) {
+		this.handler = handler;
+	}
+
+	public HttpHandler getHandler() {
+		return handler;
+	}
+
+	public int getMaxHeaderSize() {
+		return maxHeaderSize;
+	}
+
+	// Request line and headers, larger ones are answered with 431
+	public HttpServer setMaxHeaderSize(int maxHeaderSize) {
+		this.maxHeaderSize = maxHeaderSize;
+		return this;
+	}
+
+	public int getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	// Larger bodies are answered with 413
+	public HttpServer setMaxBodySize(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+		return this;
+	}
+
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	// Milliseconds a connection may wait for its next request, 0 keeps it forever
+	public HttpServer setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+
+	public int getMaxPipelined() {
+		return maxPipelined;
+	}
+
+	// Requests of one connection handled at the same time, the following ones wait in the socket
+	public HttpServer setMaxPipelined(int maxPipelined) {
+		if (maxPipelined < 1) throw (new IllegalArgumentException("maxPipelined must be at least 1"));
+		this.maxPipelined = maxPipelined;
+		return this;
+	}
+
+	public ErrorHandler getErrorHandler() {
+		return errorHandler;
+	}
+
+	// Receives handler failures and failed streamed bodies, without one they are dropped
+	public HttpServer setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	void reportError(Exception exception) {
+		if (errorHandler != null) errorHandler.onError(exception);
+	}
+
+	public Promise<HttpServer> bindAsync(SocketAddress address) {
+		return bindAsync(address, new SocketOptions().setTcpNoDelay(true));
+	}
+
+	// Accepts and serves on the current loop
+	public Promise<HttpServer> bindAsync(SocketAddress address, SocketOptions options) {
+		Promise<HttpServer> promise = new Promise<>();
+		listener = new AsyncSocketListener(options).setErrorHandler(this::reportError);
+		((Promise<Object>) (Promise<?>) listener.bindAsync(address)).then((result) -> {
+			if (result instanceof Exception) {
+				promise.reject((Exception) result);
+			} else {
+				acceptNext();
+				promise.resolve(this);
+			}
+		});
+		return promise;
+	}
+
+	private void acceptNext() {
+		listener.acceptAsync().then((AsyncSocket socket) -> {
+			onSocket(socket);
+			acceptNext();
+		});
+	}
+
+	@Override
+	public void onSocket(AsyncSocket socket) {
+		new HttpConnection(this, socket).start();
+	}
+
+	public int getLocalPort() throws IOException {
+		return listener.getLocalPort();
+	}
+
+	// Stops accepting, open connections finish on their own
+	public void close() throws IOException {
+		if (listener != null) listener.close();
+	}
+}
@@ -0,0 +1,39 @@
+package jawaitasync.http;
+
+final class HttpStatus {
+	// Statuses with a standard reason phrase
+	static final int[] CODES = {100, 200, 201, 204, 206, 301, 302, 304, 400, 401, 403, 404, 405, 408, 413, 431, 500, 501, 503};
+
+	private HttpStatus() {
+	}
+
+	// 1xx, 204 and 304 responses end with their head (RFC 7230 3.3.3)
+	static boolean hasBody(int status) {
+		return status >= 200 && status != 204 && status != 304;
+	}
+
+	static String reason(int status) {
+		switch (status) {
+			case 100: return "Continue";
+			case 200: return "OK";
+			case 201: return "Created";
+			case 204: return "No Content";
+			case 206: return "Partial Content";
+			case 301: return "Moved Permanently";
+			case 302: return "Found";
+			case 304: return "Not Modified";
+			case 400: return "Bad Request";
+			case 401: return "Unauthorized";
+			case 403: return "Forbidden";
+			case 404: return "Not Found";
+			case 405: return "Method Not Allowed";
+			case 408: return "Request Timeout";
+			case 413: return "Payload Too Large";
+			case 431: return "Request Header Fields Too Large";
+			case 500: return "Internal Server Error";
+			case 501: return "Not Implemented";
+			case 503: return "Service Unavailable";
+			default: return "Unknown";
+		}
+	}
+}
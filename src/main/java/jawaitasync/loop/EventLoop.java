@@ -3,7 +3,7 @@ package jawaitasync.loop;
 import jawaitasync.ResultRunnable;
 
 public interface EventLoop {
-	void setTimeout(Runnable r, int time);
+	Timeout setTimeout(Runnable r, int time);
 	void enqueue(Runnable r);
 	void refCountInc();
 	void refCountDec();
@@ -0,0 +1,100 @@
+package jawaitasync.loop;
+
+import jawaitasync.HttpClient;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of event loops, each one running on its own thread until shutdown.
+ * Continuations registered from a loop thread go back to that loop, so work spread with next() stays on its loop.
+ */
+public class EventLoopGroup {
+	private final SelectorEventLoop[] loops;
+	private final Thread[] threads;
+	private final AtomicInteger nextIndex = new AtomicInteger();
+	private final AtomicInteger runningLoops = new AtomicInteger();
+	private volatile HttpClient httpClient;
+
+	public EventLoopGroup() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public EventLoopGroup(int size) {
+		this(size, null);
+	}
+
+	// threadFactory runs the loops, for example VirtualThreads.factory(...). Named platform threads when null.
+	// Virtual and daemon threads don't keep the JVM alive, use awaitTermination.
+	public EventLoopGroup(int size, ThreadFactory threadFactory) {
+		if (size < 1) throw (new IllegalArgumentException("size must be at least 1"));
+		loops = new SelectorEventLoop[size];
+		threads = new Thread[size];
+		runningLoops.set(size);
+		for (int n = 0; n < size; n++) {
+			SelectorEventLoop loop = new SelectorEventLoop();
+			loop.group = this;
+			// Released by shutdown
+			loop.refCountInc();
+			loops[n] = loop;
+			Runnable runLoop = () -> {
+				try {
+					loop.loop();
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					if (runningLoops.decrementAndGet() == 0) onTerminated();
+				}
+			};
+			threads[n] = (threadFactory != null) ? threadFactory.newThread(runLoop) : new Thread(runLoop, "jawaitasync-loop-" + n);
+			threads[n].start();
+		}
+	}
+
+	public int size() {
+		return loops.length;
+	}
+
+	public SelectorEventLoop get(int index) {
+		return loops[index];
+	}
+
+	// Round robin
+	public SelectorEventLoop next() {
+		return loops[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	// Shared by the loops of this group, closed once all of them terminate.
+	public HttpClient getHttpClient() {
+		HttpClient client = httpClient;
+		if (client == null) {
+			synchronized (this) {
+				if (httpClient == null) httpClient = new HttpClient();
+				client = httpClient;
+			}
+		}
+		return client;
+	}
+
+	// Replaces the client before it is first used, to configure limits and timeouts.
+	synchronized public void setHttpClient(HttpClient client) {
+		httpClient = client;
+	}
+
+	synchronized private void onTerminated() {
+		if (httpClient != null) httpClient.close();
+	}
+
+	public void execute(Runnable r) {
+		next().enqueue(r);
+	}
+
+	// Loops exit once their pending tasks, timeouts and references are done.
+	public void shutdown() {
+		for (SelectorEventLoop loop : loops) loop.refCountDec();
+	}
+
+	public void awaitTermination() throws InterruptedException {
+		for (Thread thread : threads) thread.join();
+	}
+}
@@ -1,5 +1,24 @@
 package jawaitasync.loop;
 
 public class EventLoopHolder {
-	static public EventLoop instance = new NormalEventLoop();
+	// Default loop for code that doesn't run inside any loop (main thread, foreign threads)
+	static public EventLoop instance = new SelectorEventLoop();
+
+	static private final ThreadLocal<EventLoop> currentLoop = new ThreadLocal<>();
+
+	// Loop running on the calling thread, or the default instance outside of any loop.
+	static public EventLoop current() {
+		EventLoop loop = currentLoop.get();
+		return (loop != null) ? loop : instance;
+	}
+
+	static EventLoop setCurrent(EventLoop loop) {
+		EventLoop previous = currentLoop.get();
+		if (loop != null) {
+			currentLoop.set(loop);
+		} else {
+			currentLoop.remove();
+		}
+		return previous;
+	}
 }
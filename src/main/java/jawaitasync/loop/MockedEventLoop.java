@@ -4,10 +4,12 @@ public class MockedEventLoop extends NormalEventLoop {
 	long currentTime = 0;
 
 	@Override
-	public void setTimeout(Runnable r, int time) {
+	public Timeout setTimeout(Runnable r, int time) {
 		System.out.print("[" + currentTime + ":" + time + "]");
-		enqueue(r);
+		MockedTimeout timeout = new MockedTimeout(r);
+		enqueue(timeout);
 		currentTime += time;
+		return timeout;
 	}
 
 	@Override
@@ -15,4 +17,35 @@ public class MockedEventLoop extends NormalEventLoop {
 		//exception.printStackTrace();
 		System.out.print("[" + exception.getClass().getSimpleName() + ":" + exception.getMessage() + "]");
 	}
-}
\ No newline at end of file
+
+	static private class MockedTimeout implements Timeout, Runnable {
+		private final Runnable r;
+		private boolean done = false;
+		private boolean cancelled = false;
+
+		MockedTimeout(Runnable r) {
+			this.r = r;
+		}
+
+		@Override
+		synchronized public boolean cancel() {
+			if (done) return false;
+			done = cancelled = true;
+			return true;
+		}
+
+		@Override
+		synchronized public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (done) return;
+				done = true;
+			}
+			r.run();
+		}
+	}
+}
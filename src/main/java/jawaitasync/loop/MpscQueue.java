@@ -0,0 +1,95 @@
+package jawaitasync.loop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Unbounded multi-producer single-consumer queue made of linked array chunks.
+ * Producers claim a slot with a single getAndIncrement and don't allocate except when a new chunk is needed.
+ * Only one thread may call poll and isEmpty.
+ */
+public final class MpscQueue<E> {
+	static private final class Chunk {
+		final long index;
+		final AtomicReferenceArray<Object> slots;
+		volatile Chunk next;
+		volatile Chunk previous;
+
+		Chunk(long index, int size, Chunk previous) {
+			this.index = index;
+			this.slots = new AtomicReferenceArray<>(size);
+			this.previous = previous;
+		}
+	}
+
+	static private final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT = AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+	static private final AtomicReferenceFieldUpdater<MpscQueue, Chunk> PRODUCER_CHUNK = AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Chunk.class, "producerChunk");
+
+	private final int chunkShift;
+	private final int chunkMask;
+	private final AtomicLong producerIndex = new AtomicLong();
+	private volatile Chunk producerChunk;
+	private Chunk consumerChunk;
+	private long consumerIndex;
+
+	public MpscQueue() {
+		this(1024);
+	}
+
+	public MpscQueue(int chunkSize) {
+		if (chunkSize < 2 || Integer.bitCount(chunkSize) != 1) throw (new IllegalArgumentException("chunkSize must be a power of two"));
+		this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+		this.chunkMask = chunkSize - 1;
+		this.producerChunk = this.consumerChunk = new Chunk(0, chunkSize, null);
+	}
+
+	public void offer(E item) {
+		if (item == null) throw (new NullPointerException());
+		long index = producerIndex.getAndIncrement();
+		long chunkIndex = index >>> chunkShift;
+		Chunk chunk = producerChunk;
+		if (chunk.index != chunkIndex) chunk = findChunk(chunk, chunkIndex);
+		chunk.slots.lazySet((int) (index & chunkMask), item);
+	}
+
+	private Chunk findChunk(Chunk chunk, long chunkIndex) {
+		// Another producer may have moved the hint past our chunk. The consumer can't have released it yet
+		// because our slot is still empty.
+		while (chunk.index > chunkIndex) chunk = chunk.previous;
+		while (chunk.index < chunkIndex) {
+			Chunk next = chunk.next;
+			if (next == null) {
+				next = new Chunk(chunk.index + 1, chunkMask + 1, chunk);
+				if (!NEXT.compareAndSet(chunk, null, next)) next = chunk.next;
+			}
+			chunk = next;
+		}
+		Chunk hint;
+		while ((hint = producerChunk).index < chunk.index && !PRODUCER_CHUNK.compareAndSet(this, hint, chunk)) {
+		}
+		return chunk;
+	}
+
+	// Returns null when empty or when the next producer hasn't finished writing its item yet.
+	public E poll() {
+		Chunk chunk = consumerChunk;
+		if (chunk.index != (consumerIndex >>> chunkShift)) {
+			Chunk next = chunk.next;
+			if (next == null) return null;
+			next.previous = null;
+			consumerChunk = chunk = next;
+		}
+		int offset = (int) (consumerIndex & chunkMask);
+		Object item = chunk.slots.get(offset);
+		if (item == null) return null;
+		chunk.slots.lazySet(offset, null);
+		consumerIndex++;
+		return (E) item;
+	}
+
+	// True when no producer has claimed a slot that wasn't polled yet.
+	public boolean isEmpty() {
+		return producerIndex.get() == consumerIndex;
+	}
+}
@@ -1,53 +1,179 @@
 package jawaitasync.loop;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class NormalEventLoop implements EventLoop {
-	private Thread loopThread;
-	private Queue<Runnable> callbacks = new LinkedList<>();
-	Timer timer = new Timer();
-	volatile long refcount = 0;
-
-	synchronized public void refCountInc() { refcount++; }
-	synchronized public void refCountDec() { refcount--; }
-
-	public void setTimeout(final Runnable r, int time) {
-		refCountInc();
-		timer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				refCountDec();
-				enqueue(r);
-			}
-		}, time);
+	static public final int DEFAULT_SPIN_COUNT = 100;
+	static public final int DEFAULT_TICK_MILLIS = 1;
+	static public final int DEFAULT_WHEEL_SIZE = 512;
+	static private final int IO_INTERVAL = 64;
+
+	private volatile Thread loopThread;
+	// Tasks enqueued from the loop thread itself don't need any synchronization.
+	private final ArrayDeque<Runnable> localCallbacks = new ArrayDeque<>();
+	private final MpscQueue<Runnable> remoteCallbacks = new MpscQueue<>();
+	private final int spinCount;
+	private volatile boolean parked = false;
+	private final TimerWheel timers;
+	private final AtomicLong refcount = new AtomicLong();
+	EventLoopGroup group;
+
+	public NormalEventLoop() {
+		this(DEFAULT_SPIN_COUNT);
+	}
+
+	// spinCount: times the loop polls other threads' tasks before parking its thread
+	public NormalEventLoop(int spinCount) {
+		this(spinCount, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	// tickMillis: timer resolution, wheelSize: buckets in the timer wheel (power of two)
+	public NormalEventLoop(int spinCount, int tickMillis, int wheelSize) {
+		this.spinCount = spinCount;
+		this.timers = new TimerWheel(this, TimeUnit.MILLISECONDS.toNanos(tickMillis), wheelSize);
+	}
+
+	public void refCountInc() { refcount.incrementAndGet(); }
+	public void refCountDec() {
+		refcount.decrementAndGet();
+		wakeup();
+	}
+
+	// Pending timeouts keep the loop alive until they fire or are cancelled.
+	public Timeout setTimeout(final Runnable r, int time) {
+		final TimerWheel.Entry timeout = timers.newTimeout(r, TimeUnit.MILLISECONDS.toNanos(time));
+		if (isLoopThread()) {
+			timers.add(timeout);
+		} else {
+			enqueue(() -> timers.add(timeout));
+		}
+		return timeout;
+	}
+
+	// Group running this loop, null for standalone loops
+	public EventLoopGroup getGroup() {
+		return group;
+	}
+
+	boolean isLoopThread() {
+		return Thread.currentThread() == loopThread;
+	}
+
+	boolean hasReferences() {
+		return refcount.get() > 0;
+	}
+
+	boolean hasRemoteCallbacks() {
+		return !remoteCallbacks.isEmpty();
+	}
+
+	boolean isRunning() {
+		return loopThread != null;
 	}
 
 	@Override
-	synchronized public void enqueue(Runnable r) {
-		callbacks.add(r);
-		notifyAll();
+	public void enqueue(Runnable r) {
+		if (isLoopThread()) {
+			localCallbacks.add(r);
+		} else {
+			remoteCallbacks.offer(r);
+			wakeup();
+		}
+	}
+
+	private void wakeup() {
+		if (parked) wakeupLoop();
+	}
+
+	// Interrupts waitForEvents. Called from any thread.
+	protected void wakeupLoop() {
+		LockSupport.unpark(loopThread);
+	}
+
+	// Blocks the loop thread until wakeupLoop or timeoutNanos elapse (no limit when negative).
+	protected void waitForEvents(long timeoutNanos) throws IOException {
+		if (timeoutNanos < 0) {
+			LockSupport.park(this);
+		} else {
+			LockSupport.parkNanos(this, timeoutNanos);
+		}
+	}
+
+	// Handles ready events without blocking, runs every IO_INTERVAL tasks and when the loop wouldn't wait.
+	protected void pollEvents() throws IOException {
 	}
 
-	synchronized private Runnable readOne() throws InterruptedException {
-		while (callbacks.size() == 0) wait();
-		return callbacks.poll();
+	// Sources of future events other than tasks, timeouts and references keep the loop alive while this is true.
+	protected boolean hasEventSources() {
+		return false;
 	}
 
-	synchronized private boolean isEmpty() {
-		return callbacks.isEmpty();
+	private Runnable readOne() {
+		Runnable runnable;
+		while ((runnable = remoteCallbacks.poll()) != null) localCallbacks.add(runnable);
+		return localCallbacks.poll();
+	}
+
+	private boolean isEmpty() {
+		return localCallbacks.isEmpty() && remoteCallbacks.isEmpty();
+	}
+
+	private void waitForCallbacks() throws IOException {
+		for (int n = 0; n < spinCount; n++) {
+			if (!remoteCallbacks.isEmpty()) return;
+		}
+		// Producers check parked after publishing their task, so one of both sides always sees the other.
+		parked = true;
+		try {
+			if (remoteCallbacks.isEmpty()) {
+				long timerWait = timers.nanosUntilNextTick(System.nanoTime());
+				if (timerWait > 0 || (timerWait < 0 && (refcount.get() > 0 || hasEventSources()))) {
+					waitForEvents(timerWait);
+				} else {
+					pollEvents();
+				}
+			}
+		} finally {
+			parked = false;
+		}
 	}
 
 	public void loop() throws Exception {
 		loopThread = Thread.currentThread();
-		while (!isEmpty() || (refcount > 0)) {
+		EventLoop previous = EventLoopHolder.setCurrent(this);
+		try {
+			runLoop();
+		} finally {
+			EventLoopHolder.setCurrent(previous);
+			loopThread = null;
+		}
+	}
+
+	private void runLoop() {
+		int ran = 0;
+		while (!isEmpty() || (refcount.get() > 0) || (timers.size() > 0) || hasEventSources()) {
 			try {
+				if (timers.size() > 0) timers.advance(System.nanoTime(), localCallbacks);
 				Runnable runnable = readOne();
-				if (runnable != null) runnable.run();
+				if (runnable != null) {
+					runnable.run();
+					// Keeps IO from starving behind a long run of tasks
+					if (++ran >= IO_INTERVAL) {
+						ran = 0;
+						pollEvents();
+					}
+				} else {
+					ran = 0;
+					waitForCallbacks();
+				}
 			} catch (Throwable exception) {
 				handleException(exception);
 			}
 		}
-		timer.cancel();
 	}
 
 	protected void handleException(Throwable exception) {
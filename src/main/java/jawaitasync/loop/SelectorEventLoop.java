@@ -0,0 +1,125 @@
+package jawaitasync.loop;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Event loop that also multiplexes NIO channels on its own thread. Tasks, timeouts and selected keys
+ * are all handled by the loop thread, other threads wake it up with selector.wakeup().
+ * The selector is only opened once a channel is registered.
+ */
+public class SelectorEventLoop extends NormalEventLoop {
+	public interface Handler {
+		void onSelected(SelectionKey key) throws IOException;
+	}
+
+	private volatile Selector selector;
+
+	public SelectorEventLoop() {
+		super();
+	}
+
+	public SelectorEventLoop(int spinCount) {
+		super(spinCount);
+	}
+
+	public SelectorEventLoop(int spinCount, int tickMillis, int wheelSize) {
+		super(spinCount, tickMillis, wheelSize);
+	}
+
+	static public SelectorEventLoop current() {
+		EventLoop loop = EventLoopHolder.current();
+		if (!(loop instanceof SelectorEventLoop)) throw (new IllegalStateException("Current event loop can't select channels: " + loop));
+		return (SelectorEventLoop) loop;
+	}
+
+	// Must be called from the loop thread (or before the loop starts). The handler runs on the loop thread.
+	public SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+		if (!isLoopThread() && isRunning()) throw (new IllegalStateException("register must be called from the loop thread"));
+		if (selector == null) selector = Selector.open();
+		channel.configureBlocking(false);
+		return channel.register(selector, ops, handler);
+	}
+
+	@Override
+	protected void wakeupLoop() {
+		Selector selector = this.selector;
+		if (selector != null) {
+			selector.wakeup();
+		} else {
+			super.wakeupLoop();
+		}
+	}
+
+	@Override
+	protected void waitForEvents(long timeoutNanos) throws IOException {
+		Selector selector = this.selector;
+		if (selector == null) {
+			super.waitForEvents(timeoutNanos);
+			return;
+		}
+		if (timeoutNanos < 0) {
+			// Closed channels stay registered until the next selection, flush them so the loop can end.
+			// selectNow also clears a pending wakeup, tasks enqueued before it are checked again.
+			if (selector.selectNow() == 0 && !hasRemoteCallbacks() && (hasReferences() || !selector.keys().isEmpty())) selector.select();
+		} else {
+			long millis = (timeoutNanos + 999_999) / 1_000_000;
+			if (millis == 0) {
+				selector.selectNow();
+			} else {
+				selector.select(millis);
+			}
+		}
+		processSelectedKeys(selector);
+	}
+
+	@Override
+	protected void pollEvents() throws IOException {
+		Selector selector = this.selector;
+		if (selector == null) return;
+		selector.selectNow();
+		processSelectedKeys(selector);
+	}
+
+	@Override
+	protected boolean hasEventSources() {
+		Selector selector = this.selector;
+		return selector != null && !selector.keys().isEmpty();
+	}
+
+	private void processSelectedKeys(Selector selector) {
+		Set<SelectionKey> keys = selector.selectedKeys();
+		if (keys.isEmpty()) return;
+		Iterator<SelectionKey> iterator = keys.iterator();
+		while (iterator.hasNext()) {
+			SelectionKey key = iterator.next();
+			iterator.remove();
+			try {
+				if (key.isValid()) ((Handler) key.attachment()).onSelected(key);
+			} catch (Throwable e) {
+				// A failing handler would otherwise look like a silent disconnect
+				handleException(e);
+				key.cancel();
+				try {
+					key.channel().close();
+				} catch (IOException e2) {
+				}
+			}
+		}
+	}
+
+	@Override
+	public void loop() throws Exception {
+		try {
+			super.loop();
+		} finally {
+			Selector selector = this.selector;
+			this.selector = null;
+			if (selector != null) selector.close();
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package jawaitasync.loop;
+
+public interface Timeout {
+	// Returns false when the timeout already fired or was cancelled.
+	boolean cancel();
+
+	boolean isCancelled();
+}
@@ -0,0 +1,128 @@
+package jawaitasync.loop;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Hashed timing wheel owned by an event loop. Only the loop thread adds, removes and expires entries;
+ * other threads go through the loop queue. Scheduling and cancelling are O(1).
+ */
+public final class TimerWheel {
+	static private final int PENDING = 0;
+	static private final int CANCELLED = 1;
+	static private final int EXPIRED = 2;
+
+	static private final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+	final class Entry implements Timeout {
+		final Runnable task;
+		final long deadline;
+		volatile int state = PENDING;
+		long rounds;
+		int bucket = -1;
+		Entry previous;
+		Entry next;
+
+		Entry(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+			if (owner.isLoopThread()) {
+				remove(this);
+			} else {
+				owner.enqueue(() -> remove(this));
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+	}
+
+	private final NormalEventLoop owner;
+	private final long tickNanos;
+	private final Entry[] buckets;
+	private final int mask;
+	private final long startTime = System.nanoTime();
+	// Next tick that hasn't been processed
+	private long currentTick = 0;
+	private int size = 0;
+
+	TimerWheel(NormalEventLoop owner, long tickNanos, int wheelSize) {
+		if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) throw (new IllegalArgumentException("wheelSize must be a power of two"));
+		this.owner = owner;
+		this.tickNanos = tickNanos;
+		this.buckets = new Entry[wheelSize];
+		this.mask = wheelSize - 1;
+	}
+
+	Entry newTimeout(Runnable task, long delayNanos) {
+		return new Entry(task, System.nanoTime() + delayNanos);
+	}
+
+	void add(Entry entry) {
+		if (entry.state != PENDING || entry.bucket >= 0) return;
+		// Empty wheels aren't advanced, skip the ticks that passed meanwhile
+		if (size == 0) currentTick = Math.max(currentTick, (System.nanoTime() - startTime) / tickNanos);
+		long deadlineTick = Math.max(currentTick, (entry.deadline - startTime + tickNanos - 1) / tickNanos);
+		entry.rounds = (deadlineTick - currentTick) / buckets.length;
+		entry.bucket = (int) (deadlineTick & mask);
+		entry.previous = null;
+		entry.next = buckets[entry.bucket];
+		if (entry.next != null) entry.next.previous = entry;
+		buckets[entry.bucket] = entry;
+		size++;
+	}
+
+	void remove(Entry entry) {
+		if (entry.bucket < 0) return;
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+		} else {
+			buckets[entry.bucket] = entry.next;
+		}
+		if (entry.next != null) entry.next.previous = entry.previous;
+		entry.previous = entry.next = null;
+		entry.bucket = -1;
+		size--;
+	}
+
+	int size() {
+		return size;
+	}
+
+	// Moves the tasks of every timeout that expired up to now into the expired queue.
+	void advance(long now, Queue<Runnable> expired) {
+		long nowTick = (now - startTime) / tickNanos;
+		for (; currentTick <= nowTick && size > 0; currentTick++) {
+			Entry entry = buckets[(int) (currentTick & mask)];
+			while (entry != null) {
+				Entry next = entry.next;
+				if (entry.rounds <= 0) {
+					remove(entry);
+					if (STATE.compareAndSet(entry, PENDING, EXPIRED)) expired.add(entry.task);
+				} else {
+					entry.rounds--;
+				}
+				entry = next;
+			}
+		}
+		if (size == 0 && currentTick <= nowTick) currentTick = nowTick + 1;
+	}
+
+	// Nanoseconds until the next tick with entries, or -1 when there are no entries.
+	long nanosUntilNextTick(long now) {
+		if (size == 0) return -1;
+		for (int n = 0; n < buckets.length; n++) {
+			long tick = currentTick + n;
+			if (buckets[(int) (tick & mask)] != null) return Math.max(0, startTime + tick * tickNanos - now);
+		}
+		return -1;
+	}
+}
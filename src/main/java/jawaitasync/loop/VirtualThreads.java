@@ -0,0 +1,75 @@
+package jawaitasync.loop;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual threads when the running JVM has them (21+, or 19+ with preview enabled), platform daemon threads otherwise.
+ * Looked up by reflection so the library still builds and runs on Java 8.
+ */
+public final class VirtualThreads {
+	static private final Method OF_VIRTUAL;
+	static private final Method BUILDER_NAME;
+	static private final Method BUILDER_FACTORY;
+	static private final Method PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null, builderName = null, builderFactory = null, perTaskExecutor = null;
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builderClass.getMethod("name", String.class, long.class);
+			builderFactory = builderClass.getMethod("factory");
+			perTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			// Throws on 19/20 when preview features aren't enabled
+			ofVirtual.invoke(null);
+		} catch (Throwable e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+		PER_TASK_EXECUTOR = perTaskExecutor;
+	}
+
+	private VirtualThreads() {
+	}
+
+	static public boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	// Threads are named prefix-N
+	static public ThreadFactory factory(String prefix) {
+		if (isSupported()) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+				return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				throw (new IllegalStateException(e));
+			}
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		return (r) -> {
+			Thread thread = new Thread(r, prefix + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	// One new virtual thread per task, or a cached pool of platform threads.
+	// Unbounded, only for blocking work that mostly waits.
+	static public ExecutorService newPerTaskExecutor(String prefix) {
+		if (isSupported()) {
+			try {
+				return (ExecutorService) PER_TASK_EXECUTOR.invoke(null, factory(prefix));
+			} catch (ReflectiveOperationException e) {
+				throw (new IllegalStateException(e));
+			}
+		}
+		return Executors.newCachedThreadPool(factory(prefix));
+	}
+}
@@ -6,6 +6,8 @@ import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.analysis.Frame;
 
+import java.util.BitSet;
+
 public class AnalyzedFrame {
 	public ClassNode clazz;
 	public MethodNode method;
@@ -14,6 +16,8 @@ public class AnalyzedFrame {
 	public Frame frame;
 	public AbstractInsnNode instruction;
 	public LocalVariableNode[] locals;
+	// Local slots whose current value may still be read at or after this instruction
+	public BitSet liveLocals;
 	public int originalIndex;
 	public int newIndex;
 }
@@ -1,6 +1,5 @@
 package jawaitasync.processor;
 
-import com.sun.corba.se.spi.legacy.connection.GetEndPointInfoAgainException;
 import jawaitasync.processor.analyzer.TypeInterpreter;
 import org.objectweb.asm.tree.*;
 import org.objectweb.asm.tree.analysis.Analyzer;
@@ -8,10 +7,13 @@ import org.objectweb.asm.tree.analysis.AnalyzerException;
 import org.objectweb.asm.tree.analysis.Frame;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
+import static org.objectweb.asm.Opcodes.*;
+
 public class AwaitAnalyzer {
 	public HashMap<AbstractInsnNode, AnalyzedFrame> framesByInstruction = new HashMap<>();
 	public ClassNode outerClass;
@@ -26,11 +28,29 @@ public class AwaitAnalyzer {
 	}
 
 	private void analyze() throws AnalyzerException {
-		Analyzer analyzer = new Analyzer(new TypeInterpreter());
+		int instructionsLength = instructions.size();
+		final List<Integer>[] successors = new List[instructionsLength];
+		final List<Integer>[] exceptionSuccessors = new List[instructionsLength];
+		for (int n = 0; n < instructionsLength; n++) {
+			successors[n] = new ArrayList<>(2);
+			exceptionSuccessors[n] = new ArrayList<>(0);
+		}
+
+		Analyzer analyzer = new Analyzer(new TypeInterpreter()) {
+			@Override
+			protected void newControlFlowEdge(int insn, int successor) {
+				successors[insn].add(successor);
+			}
+
+			@Override
+			protected boolean newControlFlowExceptionEdge(int insn, int successor) {
+				exceptionSuccessors[insn].add(successor);
+				return true;
+			}
+		};
 		Frame[] frames = analyzer.analyze(outerClass.name, method);
 
 		//AnalyzedFrame paf = null;
-		int instructionsLength = instructions.size();
 
 		int maxLocals = method.maxLocals;
 
@@ -69,6 +89,50 @@ public class AwaitAnalyzer {
 				analyzedFrames[index].locals[local.index] = local;
 			}
 		}
+
+		computeLiveness(analyzedFrames, successors, exceptionSuccessors);
+	}
+
+	// Backward data-flow liveness of local slots. Exception edges don't kill anything, because the handler
+	// may be reached before the instruction stores its local.
+	private void computeLiveness(AnalyzedFrame[] analyzedFrames, List<Integer>[] successors, List<Integer>[] exceptionSuccessors) {
+		int instructionsLength = analyzedFrames.length;
+		for (AnalyzedFrame af : analyzedFrames) af.liveLocals = new BitSet();
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int n = instructionsLength - 1; n >= 0; n--) {
+				AbstractInsnNode instruction = analyzedFrames[n].instruction;
+				BitSet live = new BitSet();
+				for (int successor : successors[n]) live.or(analyzedFrames[successor].liveLocals);
+
+				if (instruction instanceof VarInsnNode) {
+					VarInsnNode varNode = (VarInsnNode) instruction;
+					switch (varNode.getOpcode()) {
+						case ISTORE:
+						case LSTORE:
+						case FSTORE:
+						case DSTORE:
+						case ASTORE:
+							live.clear(varNode.var);
+							break;
+						default:
+							live.set(varNode.var);
+							break;
+					}
+				} else if (instruction instanceof IincInsnNode) {
+					live.set(((IincInsnNode) instruction).var);
+				}
+
+				for (int successor : exceptionSuccessors[n]) live.or(analyzedFrames[successor].liveLocals);
+
+				if (!live.equals(analyzedFrames[n].liveLocals)) {
+					analyzedFrames[n].liveLocals = live;
+					changed = true;
+				}
+			}
+		}
 	}
 
 	public AnalyzedFrame[] prepare(InsnList instructions) {
@@ -92,6 +156,7 @@ public class AwaitAnalyzer {
 				af.next = paf.next;
 				af.previous = paf.previous;
 				af.locals = paf.locals;
+				af.liveLocals = paf.liveLocals;
 				af.method = paf.method;
 			}
 			af.newIndex = n;
@@ -1,5 +1,8 @@
 package jawaitasync.processor;
 
+import jawaitasync.DoublePromise;
+import jawaitasync.IntPromise;
+import jawaitasync.LongPromise;
 import jawaitasync.Promise;
 import jawaitasync.ResultRunnable;
 import jawaitasync.processor.analyzer.TypeInterpreter;
@@ -24,24 +27,17 @@ import static org.objectweb.asm.Opcodes.*;
 public class AwaitProcessor {
 
 	static final Type Promise_TYPE = Type.getType(Promise.class);
+	static final Type IntPromise_TYPE = Type.getType(IntPromise.class);
+	static final Type LongPromise_TYPE = Type.getType(LongPromise.class);
+	static final Type DoublePromise_TYPE = Type.getType(DoublePromise.class);
 	static final Type Object_TYPE = Type.getType(Object.class);
 	static final Type Long_TYPE = Type.getType(Long.class);
 	static final Type Double_TYPE = Type.getType(Double.class);
 
-	private MethodNode createTransformedConstructor(ClassNode cn, MethodNode method) throws Exception {
-		int argumentCount = AwaitTools.getMethodArgumentCountIncludingThis(method);
-		LocalVariableNode[] localsByIndex = AwaitTools.getLocalsByIndex(method);
-
-		Type[] args = new Type[argumentCount];
-
-		//System.out.println("argumentCount:" + argumentCount);
-
-		for (int n = 0; n < argumentCount; n++) {
-			LocalVariableNode lv2 = localsByIndex[n];
-			args[n] = Type.getType(lv2.desc);
-			//System.out.println("args[" + n + "]:" + lv2.name + ", " + lv2.desc);
-		}
+	// Slots 0 and 1 of the generated run(Object) are the state machine and the resumed value.
+	static final int LOCALS_OFFSET = 2;
 
+	private MethodNode createTransformedConstructor(ClassNode cn, Type promiseType, Type[] args, FieldNode[] argumentFields) throws Exception {
 		// this, arguments from the function
 		MethodNode mnc = new MethodNode(ACC_PUBLIC, "<init>", Type.getMethodType(Type.VOID_TYPE, args).getDescriptor(), null, null);
 		mnc.instructions.add(new IntInsnNode(ALOAD, 0));
@@ -49,28 +45,102 @@ public class AwaitProcessor {
 
 
 		mnc.instructions.add(new IntInsnNode(ALOAD, 0));
-		mnc.instructions.add(new TypeInsnNode(NEW, Promise_TYPE.getInternalName()));
+		mnc.instructions.add(new TypeInsnNode(NEW, promiseType.getInternalName()));
 		mnc.instructions.add(new InsnNode(DUP));
-		mnc.instructions.add(new MethodInsnNode(INVOKESPECIAL, Promise_TYPE.getInternalName(), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false));
-		mnc.instructions.add(new FieldInsnNode(PUTFIELD, cn.name, "promise", Promise_TYPE.getDescriptor()));
+		mnc.instructions.add(new MethodInsnNode(INVOKESPECIAL, promiseType.getInternalName(), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false));
+		mnc.instructions.add(new FieldInsnNode(PUTFIELD, cn.name, "promise", promiseType.getDescriptor()));
 
 		mnc.instructions.add(new IntInsnNode(ALOAD, 0));
 		mnc.instructions.add(new IntInsnNode(BIPUSH, 0));
 		mnc.instructions.add(new FieldInsnNode(PUTFIELD, cn.name, "state", "I"));
 
-		for (int n = 0; n < argumentCount; n++) {
-			LocalVariableNode lv2 = localsByIndex[n];
-			Type lv2Type = Type.getType(lv2.desc);
+		for (int n = 0, slot = 1; n < args.length; slot += args[n].getSize(), n++) {
 			mnc.instructions.add(new IntInsnNode(ALOAD, 0));
-			//System.out.println("Argument:" + lv2Type + ";" + ClassNodeUtils.getOperandType(lv2Type));
-			mnc.instructions.add(getLoad(lv2Type, n + 1));
-			mnc.instructions.add(new FieldInsnNode(PUTFIELD, cn.name, "local_" + lv2.name, lv2.desc));
+			mnc.instructions.add(new VarInsnNode(args[n].getOpcode(ILOAD), slot));
+			mnc.instructions.add(new FieldInsnNode(PUTFIELD, cn.name, argumentFields[n].name, argumentFields[n].desc));
 		}
 
 		mnc.instructions.add(new InsnNode(RETURN));
 		return mnc;
 	}
 
+	static private boolean isPrimitivePromise(Type type) {
+		return type.equals(IntPromise_TYPE) || type.equals(LongPromise_TYPE) || type.equals(DoublePromise_TYPE);
+	}
+
+	// Getter of a resolved primitive promise, that rethrows its rejection.
+	static private String getResolvedPrimitiveMethodName(Type type) {
+		switch (type.getSort()) {
+			case Type.INT: return "getResolvedInt";
+			case Type.LONG: return "getResolvedLong";
+			case Type.DOUBLE: return "getResolvedDouble";
+		}
+		return null;
+	}
+
+	static private AbstractInsnNode getBox(Type type) {
+		switch (type.getSort()) {
+			case Type.INT: return new MethodInsnNode(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+			case Type.LONG: return new MethodInsnNode(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+			case Type.DOUBLE: return new MethodInsnNode(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+		}
+		throw (new RuntimeException("Can't box " + type));
+	}
+
+	// Fields backing locals that are alive across an await. One field per slot and type.
+	static private FieldNode getOrCreateLocalField(ClassNode cn, Map<String, FieldNode> localFields, int slot, Type type, String name) {
+		String key = slot + ":" + type.getDescriptor();
+		FieldNode field = localFields.get(key);
+		if (field == null) {
+			String baseName = "local_" + ((name != null) ? name : ("" + slot));
+			String fieldName = baseName;
+			for (int n = 2; getField(cn, fieldName) != null; n++) fieldName = baseName + "$" + n;
+			cn.fields.add(field = new FieldNode(ACC_PUBLIC, fieldName, type.getDescriptor(), null, null));
+			localFields.put(key, field);
+		}
+		return field;
+	}
+
+	// Type used to store a value across a suspension. Prefers the analyzed type and falls back to debug information
+	// when the analyzer merged incompatible references.
+	static private Type getStorableType(TypeValue value, LocalVariableNode debugLocal) {
+		Type type = value.getType();
+		if (type != null && !(type.getSort() == Type.OBJECT && type.getInternalName().equals("null"))) return type;
+		if (debugLocal != null) {
+			Type debugType = Type.getType(debugLocal.desc);
+			if (debugType.getSort() == Type.OBJECT || debugType.getSort() == Type.ARRAY) return debugType;
+		}
+		return Object_TYPE;
+	}
+
+	// Restoring locals after resuming can't be covered by user exception handlers: the handlers would see those
+	// locals as undefined. Splits the try blocks around these regions.
+	static private void excludeFromTryCatchBlocks(MethodNode mn, List<LabelNode[]> regions) {
+		for (LabelNode[] region : regions) {
+			int regionStart = mn.instructions.indexOf(region[0]);
+			int regionEnd = mn.instructions.indexOf(region[1]);
+			List<TryCatchBlockNode> blocks = new ArrayList<>();
+			for (TryCatchBlockNode block : (List<TryCatchBlockNode>) mn.tryCatchBlocks) {
+				int blockStart = mn.instructions.indexOf(block.start);
+				int blockEnd = mn.instructions.indexOf(block.end);
+				if (blockStart <= regionStart && regionEnd <= blockEnd) {
+					if (hasInstructions(mn.instructions, blockStart, regionStart)) blocks.add(new TryCatchBlockNode(block.start, region[0], block.handler, block.type));
+					if (hasInstructions(mn.instructions, regionEnd, blockEnd)) blocks.add(new TryCatchBlockNode(region[1], block.end, block.handler, block.type));
+				} else {
+					blocks.add(block);
+				}
+			}
+			mn.tryCatchBlocks = blocks;
+		}
+	}
+
+	static private boolean hasInstructions(InsnList instructions, int start, int end) {
+		for (int n = start; n < end; n++) {
+			if (instructions.get(n).getOpcode() >= 0) return true;
+		}
+		return false;
+	}
+
 	static private MethodNode getMethod(ClassNode classNode, String name) {
 		for (Object node : classNode.methods) {
 			MethodNode methodNode = (MethodNode) node;
@@ -158,9 +228,10 @@ public class AwaitProcessor {
 		cn.outerMethodDesc = method.desc;
 
 		Type methodReturnType = Type.getMethodType(method.desc).getReturnType();
-		if ((methodReturnType != Type.VOID_TYPE) && (!methodReturnType.getDescriptor().equals(Type.getType(Promise.class).getDescriptor()))) {
+		if ((methodReturnType != Type.VOID_TYPE) && !methodReturnType.equals(Promise_TYPE) && !isPrimitivePromise(methodReturnType)) {
 			throw (new Exception("Method " + outerClass.name + ":" + method.name + " doesn't return a Promise or void"));
 		}
+		Type promiseType = isPrimitivePromise(methodReturnType) ? methodReturnType : Promise_TYPE;
 
 		//cn.name = classNode.name + "__" + method.name + "__Runnable";
 		cn.superName = Object_TYPE.getInternalName();
@@ -169,19 +240,21 @@ public class AwaitProcessor {
 		cn.interfaces.add(Type.getType(ResultRunnable.class).getInternalName());
 
 		cn.fields.add(new FieldNode(ACC_PUBLIC, "state", "I", null, null));
-		cn.fields.add(new FieldNode(ACC_PUBLIC, "promise", Promise_TYPE.getDescriptor(), null, null));
+		cn.fields.add(new FieldNode(ACC_PUBLIC, "promise", promiseType.getDescriptor(), null, null));
 
-		int argumentCount = AwaitTools.getMethodArgumentCountIncludingThis(method);
+		Type[] argumentTypes = AwaitTools.getArgumentTypesIncludingThis(outerClass, method);
 		LocalVariableNode[] localsByIndex = AwaitTools.getLocalsByIndex(method);
-
-		for (LocalVariableNode lv : (LocalVariableNode[])method.localVariables.toArray(new LocalVariableNode[0])) {
-			String localName = "local_" + lv.name;
-			if (ClassNodeUtils.getField(cn, localName) == null) {
-				cn.fields.add(new FieldNode(ACC_PUBLIC, localName, lv.desc, null, null));
-			}
+		Map<String, FieldNode> localFields = new HashMap<>();
+
+		FieldNode[] argumentFields = new FieldNode[argumentTypes.length];
+		int[] argumentSlots = new int[argumentTypes.length];
+		for (int n = 0, slot = 0; n < argumentTypes.length; slot += argumentTypes[n].getSize(), n++) {
+			LocalVariableNode lv = (slot < localsByIndex.length) ? localsByIndex[slot] : null;
+			argumentSlots[n] = slot;
+			argumentFields[n] = getOrCreateLocalField(cn, localFields, slot, argumentTypes[n], (lv != null) ? lv.name : null);
 		}
 
-		cn.methods.add(createTransformedConstructor(cn, method));
+		cn.methods.add(createTransformedConstructor(cn, promiseType, argumentTypes, argumentFields));
 
 		MethodNode mn = new MethodNode(ACC_PUBLIC, "run", Type.getMethodType(Type.VOID_TYPE, Object_TYPE).getDescriptor(), null, null);
 
@@ -194,96 +267,25 @@ public class AwaitProcessor {
 
 		//mn.localVariables.add(new LocalVariableNode("this", classType.getDescriptor(), cn.signature, (LabelNode)mn.instructions.getFirst(), (LabelNode)mn.instructions.getLast(), 0));
 
-		// Convert iinc, into load and stores, so after we can convert locals into field access.
-		for (AbstractInsnNode node : new Linq<AbstractInsnNode>(mn.instructions.toArray())) {
-			if (node instanceof IincInsnNode) {
-				IincInsnNode incNode = (IincInsnNode) node;
-				InsnList list = new InsnList();
-				list.add(new VarInsnNode(ILOAD, incNode.var));
-				list.add(new IntInsnNode(BIPUSH, incNode.incr));
-				list.add(new InsnNode(IADD));
-				list.add(new VarInsnNode(ISTORE, incNode.var));
-				mn.instructions.insertBefore(node, list);
-				mn.instructions.remove(node);
-			}
-		}
-
+		List<LabelNode[]> restoreRegions = new ArrayList<>();
 		List<LabelNode> stateLabelNodes = new ArrayList<>();
 		LabelNode startLabel = new LabelNode();
 		stateLabelNodes.add(startLabel);
-		mn.instructions.insert(mn.instructions.getFirst(), startLabel);
+		// Before the original first node, which may start a try block whose handler reads the arguments
+		mn.instructions.insert(startLabel);
 
 		for (AnalyzedFrame af : awaitAnalyzer.prepare(mn.instructions)) {
 			AbstractInsnNode node = af.instruction;
 			Frame frame = af.frame;
 
 			//System.out.println(frame);
+			// Locals stay in JVM locals, moved after this and the resumed value of run(Object).
+			// Only the ones alive across an await are saved into fields while suspended.
 			if (node instanceof VarInsnNode) {
-				boolean isNodeWrite = false;
-
-				VarInsnNode varNode = (VarInsnNode) node;
-
-				switch (varNode.getOpcode()) {
-					case ILOAD:
-					case LLOAD:
-					case FLOAD:
-					case DLOAD:
-					case ALOAD:
-						isNodeWrite = false;
-						break;
-					case ISTORE:
-					case LSTORE:
-					case FSTORE:
-					case DSTORE:
-					case ASTORE:
-						isNodeWrite = true;
-						break;
-					default:
-						throw (new Exception("Can't handle opcode"));
-				}
-				//LocalVariableNode localVar;
-				String localVarName;
-				String localVarDesc;
-				if (varNode.var >= localsByIndex.length) {
-					// Probably a throwable that is injected into catch and finally blocks
-					// @TODO: check try...catch blocks to assert this
-					Type type = Type.getType(Throwable.class);
-					String localName = "throw_" + varNode.var;
-					String fieldName = "local_" + localName;
-					FieldNode field = ClassNodeUtils.getField(cn, fieldName);
-					if (field == null) {
-						cn.fields.add(new FieldNode(ACC_PUBLIC, fieldName, type.getDescriptor(), null, null));
-					}
-					localVarName = localName;
-					localVarDesc = type.getDescriptor();
-				} else {
-					LocalVariableNode localVar = (LocalVariableNode) af.next.locals[varNode.var];
-					LocalVariableNode localVar2 = (LocalVariableNode) localsByIndex[varNode.var];
-					//System.out.println("local:" + localVar.name + ", " + ((localVar2 != null) ? localVar2.name : "--"));
-					//LocalVariableNode localVar = af.locals[varNode.var];
-					localVarName = localVar.name;
-					localVarDesc = localVar.desc;
-				}
-				InsnList list = new InsnList();
-				//System.out.println(localVar.name);
-
-				if (isNodeWrite) {
-					list.add(new VarInsnNode(ALOAD, 0));
-					if (Type.getType(localVarDesc).getSize() == 2) {
-						list.add(new InsnNode(DUP_X2));
-						list.add(new InsnNode(POP));
-					} else {
-						list.add(new InsnNode(SWAP));
-					}
-					list.add(new FieldInsnNode(PUTFIELD, cn.name, "local_" + localVarName, localVarDesc));
-				} else {
-					list.add(new VarInsnNode(ALOAD, 0));
-					list.add(new FieldInsnNode(GETFIELD, cn.name, "local_" + localVarName, localVarDesc));
-				}
-
-				mn.instructions.insertBefore(node, list);
-				mn.instructions.remove(node);
-				//System.out.println(varNode);
+				((VarInsnNode) node).var += LOCALS_OFFSET;
+			}
+			if (node instanceof IincInsnNode) {
+				((IincInsnNode) node).var += LOCALS_OFFSET;
 			}
 			if (node instanceof FieldInsnNode) {
 				FieldInsnNode fieldNode = (FieldInsnNode) node;
@@ -311,12 +313,58 @@ public class AwaitProcessor {
 			if (AwaitTools.isAwaitMethodCall(node)) {
 				//System.out.println("await!");
 				InsnList list = new InsnList();
+
+				// Primitive promises (await returning int, long or double) are read back from the promise itself
+				// when resuming, so their value is never boxed.
+				MethodInsnNode awaitNode = (MethodInsnNode) node;
+				Type awaitedType = Type.getReturnType(awaitNode.desc);
+				Type awaitedPromiseType = Type.getArgumentTypes(awaitNode.desc)[0];
+				String resolvedPrimitiveMethodName = getResolvedPrimitiveMethodName(awaitedType);
+				String resolvedPrimitiveMethodDesc = Type.getMethodDescriptor(awaitedType);
+
+				// Already resolved promises continue inline without suspending.
+				LabelNode suspendLabel = new LabelNode();
+				LabelNode resumeLabel = new LabelNode();
+				list.add(new InsnNode(DUP));
+				list.add(new MethodInsnNode(INVOKEVIRTUAL, Promise_TYPE.getInternalName(), "isResolved", Type.getMethodDescriptor(Type.BOOLEAN_TYPE), false));
+				list.add(new JumpInsnNode(IFEQ, suspendLabel));
+				if (resolvedPrimitiveMethodName != null) {
+					list.add(new MethodInsnNode(INVOKEVIRTUAL, awaitedPromiseType.getInternalName(), resolvedPrimitiveMethodName, resolvedPrimitiveMethodDesc, false));
+				} else {
+					list.add(new MethodInsnNode(INVOKEVIRTUAL, Promise_TYPE.getInternalName(), "getResolvedValue", Type.getMethodDescriptor(Object_TYPE), false));
+				}
+				list.add(new JumpInsnNode(GOTO, resumeLabel));
+				list.add(suspendLabel);
+
+				FieldNode awaitedPromiseField = null;
+				if (resolvedPrimitiveMethodName != null) {
+					cn.fields.add(awaitedPromiseField = new FieldNode(ACC_PRIVATE, "$$" + incrementalNameIndex++, awaitedPromiseType.getDescriptor(), null, null));
+					list.add(new InsnNode(DUP));
+					list.add(new VarInsnNode(ALOAD, 0));
+					list.add(new InsnNode(SWAP));
+					list.add(new FieldInsnNode(PUTFIELD, cn.name, awaitedPromiseField.name, awaitedPromiseField.desc));
+				}
+
 				list.add(new VarInsnNode(ALOAD, 0));
-				list.add(new MethodInsnNode(INVOKEVIRTUAL, Promise_TYPE.getInternalName(), "then", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ResultRunnable.class)), false));
+				list.add(new MethodInsnNode(INVOKEVIRTUAL, Promise_TYPE.getInternalName(), (awaitedPromiseField != null) ? "thenResume" : "then", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ResultRunnable.class)), false));
 				list.add(new VarInsnNode(ALOAD, 0));
 				list.add(new IntInsnNode(BIPUSH, stateLabelNodes.size()));
 				list.add(new FieldInsnNode(PUTFIELD, cn.name, "state", "I"));
 
+				// Backup live locals
+				List<Integer> liveSlots = new ArrayList<>();
+				List<FieldNode> liveFields = new ArrayList<>();
+				for (int slot = af.liveLocals.nextSetBit(0); slot >= 0; slot = af.liveLocals.nextSetBit(slot + 1)) {
+					LocalVariableNode debugLocal = ((af.locals != null) && (slot < af.locals.length)) ? af.locals[slot] : null;
+					Type type = getStorableType((TypeValue) frame.getLocal(slot), debugLocal);
+					FieldNode field = getOrCreateLocalField(cn, localFields, slot, type, (debugLocal != null) ? debugLocal.name : null);
+					liveSlots.add(slot);
+					liveFields.add(field);
+					list.add(new VarInsnNode(ALOAD, 0));
+					list.add(new VarInsnNode(type.getOpcode(ILOAD), slot + LOCALS_OFFSET));
+					list.add(new FieldInsnNode(PUTFIELD, cn.name, field.name, field.desc));
+				}
+
 				// Backup stack
 				FieldNode[] restoreStackFields = null;
 
@@ -326,7 +374,7 @@ public class AwaitProcessor {
 					restoreStackFields = new FieldNode[storeRestoreFrame.getStackSize() - 1];
 					//restoreStackFields = new FieldNode[1];
 					for (int m = restoreStackFields.length - 1; m >= 0; m--) {
-						cn.fields.add(restoreStackFields[m] = new FieldNode(ACC_PRIVATE, "$$" + incrementalNameIndex++, ((TypeValue) storeRestoreFrame.getStack(m)).getType().getDescriptor(), null, null));
+						cn.fields.add(restoreStackFields[m] = new FieldNode(ACC_PRIVATE, "$$" + incrementalNameIndex++, getStorableType((TypeValue) storeRestoreFrame.getStack(m), null).getDescriptor(), null, null));
 						list.add(new VarInsnNode(ALOAD, 0));
 
 						if (Type.getType(restoreStackFields[m].desc).getSize() == 2) {
@@ -345,6 +393,13 @@ public class AwaitProcessor {
 				stateLabelNodes.add(awaitLabel);
 				list.add(awaitLabel);
 
+				for (int m = 0; m < liveSlots.size(); m++) {
+					FieldNode field = liveFields.get(m);
+					list.add(new VarInsnNode(ALOAD, 0));
+					list.add(new FieldInsnNode(GETFIELD, cn.name, field.name, field.desc));
+					list.add(new VarInsnNode(Type.getType(field.desc).getOpcode(ISTORE), liveSlots.get(m) + LOCALS_OFFSET));
+				}
+
 				if (restoreStackFields != null) {
 					for (int m = 0; m < restoreStackFields.length; m++) {
 						list.add(new VarInsnNode(ALOAD, 0));
@@ -352,33 +407,52 @@ public class AwaitProcessor {
 					}
 				}
 
-				LabelNode skip_throw_label = new LabelNode();
+				LabelNode restoredLabel = new LabelNode();
+				list.add(restoredLabel);
+				restoreRegions.add(new LabelNode[] { awaitLabel, restoredLabel });
 
-				if (true) {
-					//if (false) {
+				if (awaitedPromiseField != null) {
+					list.add(new VarInsnNode(ALOAD, 0));
+					list.add(new FieldInsnNode(GETFIELD, cn.name, awaitedPromiseField.name, awaitedPromiseField.desc));
+					list.add(new MethodInsnNode(INVOKEVIRTUAL, awaitedPromiseType.getInternalName(), resolvedPrimitiveMethodName, resolvedPrimitiveMethodDesc, false));
+					list.add(resumeLabel);
+				} else {
 					list.add(new VarInsnNode(ALOAD, 1)); // Put the result of the promise here. (first parameter received)
+					list.add(resumeLabel);
+
+					LabelNode skip_throw_label = new LabelNode();
+
+					list.add(new InsnNode(DUP));
 					list.add(new TypeInsnNode(INSTANCEOF, Type.getType(Throwable.class).getInternalName()));
 					list.add(new JumpInsnNode(IFEQ, skip_throw_label));
 					{
-						list.add(new VarInsnNode(ALOAD, 1)); // Put the result of the promise here. (first parameter received)
 						list.add(new TypeInsnNode(CHECKCAST, Type.getType(Throwable.class).getInternalName()));
 						list.add(new InsnNode(ATHROW));
 					}
 					list.add(skip_throw_label);
 				}
 
-				list.add(new VarInsnNode(ALOAD, 1));
-
 				mn.instructions.insertBefore(node, list);
 				mn.instructions.remove(node);
 			}
 
 			if (AwaitTools.isCompleteMethodCall(node)) {
 				InsnList list = new InsnList();
+				Type completedType = Type.getArgumentTypes(((MethodInsnNode) node).desc)[0];
+				if (!isPrimitivePromise(promiseType)) {
+					// complete(int) in a method returning a plain Promise
+					if (getResolvedPrimitiveMethodName(completedType) != null) list.add(getBox(completedType));
+					completedType = Object_TYPE;
+				}
 				list.add(new IntInsnNode(ALOAD, 0));
-				list.add(new FieldInsnNode(GETFIELD, cn.name, "promise", Promise_TYPE.getDescriptor()));
-				list.add(new InsnNode(SWAP));
-				list.add(new MethodInsnNode(INVOKEVIRTUAL, Promise_TYPE.getInternalName(), "resolve", Type.getMethodDescriptor(Type.VOID_TYPE, Object_TYPE), false));
+				list.add(new FieldInsnNode(GETFIELD, cn.name, "promise", promiseType.getDescriptor()));
+				if (completedType.getSize() == 2) {
+					list.add(new InsnNode(DUP_X2));
+					list.add(new InsnNode(POP));
+				} else {
+					list.add(new InsnNode(SWAP));
+				}
+				list.add(new MethodInsnNode(INVOKEVIRTUAL, promiseType.getInternalName(), "resolve", Type.getMethodDescriptor(Type.VOID_TYPE, completedType), false));
 
 				mn.instructions.insertBefore(node, list);
 				mn.instructions.remove(node);
@@ -409,6 +483,17 @@ public class AwaitProcessor {
 			}
 		}
 
+		excludeFromTryCatchBlocks(mn, restoreRegions);
+
+		// Arguments are moved from fields into locals when starting
+		InsnList prologue = new InsnList();
+		for (int n = 0; n < argumentTypes.length; n++) {
+			prologue.add(new VarInsnNode(ALOAD, 0));
+			prologue.add(new FieldInsnNode(GETFIELD, cn.name, argumentFields[n].name, argumentFields[n].desc));
+			prologue.add(new VarInsnNode(argumentTypes[n].getOpcode(ISTORE), argumentSlots[n] + LOCALS_OFFSET));
+		}
+		mn.instructions.insert(startLabel, prologue);
+
 		InsnList list = new InsnList();
 		list.add(new VarInsnNode(ALOAD, 0));
 		list.add(new FieldInsnNode(GETFIELD, cn.name, "state", "I"));
@@ -417,7 +502,7 @@ public class AwaitProcessor {
 		LabelNode[] labelNodes2 = (LabelNode[]) (new Linq(stateLabelNodes).toArray(LabelNode.class));
 		//LabelNode startLabel = labelNodes2[0];
 		list.add(new LookupSwitchInsnNode(startLabel, Linq.range(stateLabelNodes.size()), labelNodes2));
-		mn.instructions.insert(mn.instructions.getFirst(), list);
+		mn.instructions.insert(list);
 
 		//System.out.println(cn.sourceFile);
 		//for (Object node : mn.instructions.toArray()) System.out.println(ClassNodeUtils.toString((AbstractInsnNode)node));
@@ -478,8 +563,8 @@ public class AwaitProcessor {
 				boolean isStatic = isStatic(method);
 				Type initType = Type.getMethodType(mnInit.desc);
 				Type[] initArguments = initType.getArgumentTypes();
-				for (int n = 0; n < initArguments.length; n++) {
-					method.instructions.add(getLoad(initArguments[n], n));
+				for (int n = 0, slot = 0; n < initArguments.length; slot += initArguments[n].getSize(), n++) {
+					method.instructions.add(getLoad(initArguments[n], slot));
 				}
 				method.instructions.add(new MethodInsnNode(INVOKESPECIAL, runClass.name, mnInit.name, mnInit.desc, false));
 
@@ -490,7 +575,7 @@ public class AwaitProcessor {
 				if (Type.getType(method.desc).getReturnType() == Type.VOID_TYPE) {
 					method.instructions.add(new InsnNode(RETURN));
 				} else {
-					method.instructions.add(new FieldInsnNode(GETFIELD, runClass.name, "promise", Type.getType(Promise.class).getDescriptor()));
+					method.instructions.add(new FieldInsnNode(GETFIELD, runClass.name, "promise", getField(runClass, "promise").desc));
 					method.instructions.add(new InsnNode(ARETURN));
 				}
 			}
@@ -42,6 +42,15 @@ public class AwaitTools {
 		return Type.getMethodType(method.desc).getArgumentTypes().length + (((method.access & ACC_STATIC) != 0) ? 0 : 1);
 	}
 
+	static public Type[] getArgumentTypesIncludingThis(ClassNode clazz, MethodNode method) {
+		Type[] argumentTypes = Type.getMethodType(method.desc).getArgumentTypes();
+		if ((method.access & ACC_STATIC) != 0) return argumentTypes;
+		Type[] types = new Type[argumentTypes.length + 1];
+		types[0] = Type.getObjectType(clazz.name);
+		System.arraycopy(argumentTypes, 0, types, 1, argumentTypes.length);
+		return types;
+	}
+
 	static public LocalVariableNode[] getLocalsByIndex(MethodNode method) {
 		int maxIndex = 0;
 		for (LocalVariableNode lv : (LocalVariableNode[]) new Linq(method.localVariables).toArray(LocalVariableNode.class)) {
@@ -4,7 +4,7 @@ class Bytes {
 	static public int indexOf(byte[] array, byte[] subarray) {
 		outer: for (int n = 0; n < array.length - subarray.length; n++) {
 			for (int m = 0; m < subarray.length; m++) {
-				if (array[n + m] != array[m]) continue outer;
+				if (array[n + m] != subarray[m]) continue outer;
 			}
 			return n;
 		}
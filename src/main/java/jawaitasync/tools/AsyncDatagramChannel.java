@@ -0,0 +1,200 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.SelectorEventLoop;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NotYetBoundException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+
+/**
+ * UDP endpoint on a selector loop. Every readiness event drains all the datagrams the kernel holds,
+ * so a burst is handled in a single wakeup. Must only be used from the loop it was bound on.
+ */
+public class AsyncDatagramChannel {
+	static public final int MAX_DATAGRAM_SIZE = 65507;
+	static public final int DEFAULT_MAX_QUEUED = 1024;
+
+	private final SocketOptions options;
+	private final int maxQueued;
+	private SelectorEventLoop loop;
+	private DatagramChannel channel;
+	private SelectionKey key;
+	// Datagrams are received here and copied to a pooled buffer of their size
+	private PooledBuffer receiveBuffer;
+	BufferPool bufferPool = BufferPool.DEFAULT;
+
+	private final ArrayDeque<Datagram> received = new ArrayDeque<>();
+	private final ArrayDeque<Promise<Datagram>> receivers = new ArrayDeque<>();
+	private boolean receivePaused = false;
+
+	static private final class SendRequest {
+		final ByteBuffer data;
+		final SocketAddress address;
+		final Promise<?> promise;
+
+		SendRequest(ByteBuffer data, SocketAddress address, Promise<?> promise) {
+			this.data = data;
+			this.address = address;
+			this.promise = promise;
+		}
+	}
+
+	private final ArrayDeque<SendRequest> sends = new ArrayDeque<>();
+	private boolean closed = false;
+
+	public AsyncDatagramChannel() {
+		this(new SocketOptions(), DEFAULT_MAX_QUEUED);
+	}
+
+	// maxQueued: received datagrams kept while nobody calls receiveAsync, past that the kernel drops them
+	public AsyncDatagramChannel(SocketOptions options, int maxQueued) {
+		this.options = options;
+		this.maxQueued = maxQueued;
+	}
+
+	// Binds on the current loop. A null address binds an ephemeral port, to only send.
+	public Promise<AsyncDatagramChannel> bindAsync(SocketAddress address) {
+		Promise<AsyncDatagramChannel> promise = new Promise<>();
+		loop = SelectorEventLoop.current();
+		loop.enqueue(() -> {
+			try {
+				channel = DatagramChannel.open();
+				options.applyTo(channel);
+				channel.bind(address);
+				key = loop.register(channel, SelectionKey.OP_READ, this::onSelected);
+				promise.resolve(this);
+			} catch (IOException e) {
+				close();
+				promise.reject(e);
+			}
+		});
+		return promise;
+	}
+
+	public SocketAddress getLocalAddress() throws IOException {
+		return channel.getLocalAddress();
+	}
+
+	private void onSelected(SelectionKey key) throws IOException {
+		if (key.isWritable()) flush();
+		if (key.isValid() && key.isReadable()) receiveAll();
+	}
+
+	private void receiveAll() throws IOException {
+		if (receiveBuffer == null) receiveBuffer = bufferPool.acquire(MAX_DATAGRAM_SIZE);
+		ByteBuffer buffer = receiveBuffer.buffer();
+		while (received.size() < maxQueued || !receivers.isEmpty()) {
+			buffer.clear();
+			SocketAddress address = channel.receive(buffer);
+			if (address == null) break;
+			buffer.flip();
+			PooledBuffer data = bufferPool.acquire(buffer.remaining());
+			data.buffer().put(buffer).flip();
+			Datagram datagram = new Datagram(address, data);
+			Promise<Datagram> receiver = receivers.poll();
+			if (receiver != null) {
+				receiver.resolve(datagram);
+			} else {
+				received.add(datagram);
+			}
+		}
+		updateReceiveInterest();
+	}
+
+	// Next datagram, already received ones are handed out without waiting
+	public Promise<Datagram> receiveAsync() {
+		Promise<Datagram> promise = new Promise<>();
+		Datagram datagram = received.poll();
+		if (datagram != null) {
+			promise.resolve(datagram);
+		} else if (closed) {
+			promise.reject(new ClosedChannelException());
+		} else {
+			receivers.add(promise);
+		}
+		updateReceiveInterest();
+		return promise;
+	}
+
+	// Received datagrams that are waiting for receiveAsync
+	public int getQueuedCount() {
+		return received.size();
+	}
+
+	private void updateReceiveInterest() {
+		boolean pause = received.size() >= maxQueued && receivers.isEmpty();
+		if (pause != receivePaused) {
+			receivePaused = pause;
+			setInterest(SelectionKey.OP_READ, !pause);
+		}
+	}
+
+	// Resolves once the kernel took the datagram. Rejects until bindAsync has resolved.
+	public Promise<?> sendAsync(ByteBuffer data, SocketAddress address) {
+		Promise<?> promise = new Promise<>();
+		if (closed) {
+			promise.reject(new ClosedChannelException());
+			return promise;
+		}
+		if (channel == null) {
+			promise.reject(new NotYetBoundException());
+			return promise;
+		}
+		sends.add(new SendRequest(data, address, promise));
+		if (sends.size() == 1) flush();
+		return promise;
+	}
+
+	public Promise<?> sendAsync(byte[] data, SocketAddress address) {
+		return sendAsync(ByteBuffer.wrap(data), address);
+	}
+
+	private void flush() {
+		try {
+			SendRequest send;
+			while ((send = sends.peek()) != null) {
+				// No room in the socket buffer, wait for OP_WRITE
+				if (channel.send(send.data, send.address) == 0 && send.data.hasRemaining()) break;
+				sends.poll();
+				send.promise.resolve(null);
+			}
+		} catch (IOException | RuntimeException e) {
+			// Fails this datagram only, the channel stays usable. Bad destinations throw unchecked exceptions.
+			sends.poll().promise.reject(e);
+			if (!sends.isEmpty()) loop.enqueue(this::flush);
+		}
+		setInterest(SelectionKey.OP_WRITE, !sends.isEmpty());
+	}
+
+	private void setInterest(int op, boolean enabled) {
+		if (key == null || !key.isValid()) return;
+		int ops = key.interestOps();
+		int newOps = enabled ? (ops | op) : (ops & ~op);
+		if (newOps != ops) key.interestOps(newOps);
+	}
+
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			if (channel != null) channel.close();
+		} catch (IOException e) {
+		}
+		if (receiveBuffer != null) {
+			receiveBuffer.release();
+			receiveBuffer = null;
+		}
+		Datagram datagram;
+		while ((datagram = received.poll()) != null) datagram.release();
+		Promise<Datagram> receiver;
+		while ((receiver = receivers.poll()) != null) receiver.reject(new ClosedChannelException());
+		SendRequest send;
+		while ((send = sends.poll()) != null) send.promise.reject(new ClosedChannelException());
+	}
+}
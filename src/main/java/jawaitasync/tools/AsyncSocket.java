@@ -1,50 +1,455 @@
 package jawaitasync.tools;
 
 import jawaitasync.Promise;
+import jawaitasync.loop.SelectorEventLoop;
+import jawaitasync.loop.Timeout;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Queue;
 
 import static jawaitasync.Promise.await;
 import static jawaitasync.Promise.complete;
 
+// Must only be used from the thread of the loop it is registered with.
 public class AsyncSocket {
+	static private final int MAX_GATHER = 64;
+	// Largest region handed to a single transferTo call
+	static private final long MAX_TRANSFER = 1024 * 1024;
+	static public final int DEFAULT_LOW_WATERMARK = 64 * 1024;
+	static public final int DEFAULT_HIGH_WATERMARK = 256 * 1024;
+	// Longest read up to a delimiter, including it. The high watermark doesn't apply while such a read is pending.
+	static public final int DEFAULT_MAX_DELIMITED_LENGTH = 64 * 1024;
+	static private final ThreadLocal<ByteBuffer[]> gatherArrays = new ThreadLocal<ByteBuffer[]>() {
+		@Override
+		protected ByteBuffer[] initialValue() {
+			return new ByteBuffer[MAX_GATHER];
+		}
+	};
+
 	SocketChannel socketChannel;
+	private SelectorEventLoop loop;
+	private SelectionKey key;
 
 	public AsyncSocket(SocketChannel socketChannel) {
 		this.socketChannel = socketChannel;
 	}
 
+	void register(SelectorEventLoop loop) throws IOException {
+		register(loop, SelectionKey.OP_READ);
+	}
+
+	private void register(SelectorEventLoop loop, int ops) throws IOException {
+		this.loop = loop;
+		this.key = loop.register(socketChannel, ops, this::onSelected);
+	}
+
+	static public Promise<AsyncSocket> connectAsync(SocketAddress address) {
+		return connectAsync(address, new SocketOptions());
+	}
+
+	// Connects from the current loop, the socket must then be used from that loop only.
+	// Rejects with SocketTimeoutException after the options' connect timeout.
+	static public Promise<AsyncSocket> connectAsync(SocketAddress address, SocketOptions options) {
+		Promise<AsyncSocket> promise = new Promise<>();
+		SelectorEventLoop loop = SelectorEventLoop.current();
+		loop.enqueue(() -> {
+			AsyncSocket socket = null;
+			try {
+				socket = new AsyncSocket(UnixDomainSockets.openClient(address));
+				socket.socketChannel.configureBlocking(false);
+				options.applyTo(socket.socketChannel);
+				if (socket.socketChannel.connect(address)) {
+					socket.register(loop);
+					promise.resolve(socket);
+				} else {
+					socket.connectPromise = promise;
+					socket.register(loop, SelectionKey.OP_CONNECT);
+					AsyncSocket connecting = socket;
+					if (options.getConnectTimeout() > 0) {
+						socket.connectTimeout = loop.setTimeout(() -> {
+							connecting.closeNow(new SocketTimeoutException("Connect to " + address + " timed out"));
+						}, options.getConnectTimeout());
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// connect throws unchecked exceptions for unresolved or unsupported addresses
+				if (socket != null) socket.closeNow((e instanceof IOException) ? (IOException) e : new IOException(e));
+				promise.reject(e);
+			}
+		});
+		return promise;
+	}
+
+	private Promise<AsyncSocket> connectPromise;
+	private Timeout connectTimeout;
+
+	private void onConnectable() throws IOException {
+		if (!socketChannel.finishConnect()) return;
+		if (connectTimeout != null) connectTimeout.cancel();
+		Promise<AsyncSocket> promise = connectPromise;
+		connectPromise = null;
+		key.interestOps(writes.isEmpty() ? SelectionKey.OP_READ : (SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+		promise.resolve(this);
+	}
+
+	private void onSelected(SelectionKey key) {
+		try {
+			if (key.isConnectable()) {
+				onConnectable();
+				return;
+			}
+			if (key.isWritable()) flush();
+			if (key.isValid() && key.isReadable()) onReadable(key);
+		} catch (IOException e) {
+			closeNow(e);
+		}
+	}
+
+	// The peer won't send more, the socket stays writable until closed
 	void onClose() {
+		inputClosed = true;
+		setInterest(SelectionKey.OP_READ, false);
+		tryCouple();
+	}
+
+	// After a protocol error: drops the unread input and stops reading, the socket stays writable
+	void stopInput() {
+		inputClosed = true;
+		readQueue.clear();
+		setInterest(SelectionKey.OP_READ, false);
+	}
+
+	BufferPool bufferPool = BufferPool.DEFAULT;
+	private final ReadSizePredictor readSize = new ReadSizePredictor();
 
+	// Called by the loop when the channel is readable
+	void onReadable(SelectionKey key) throws IOException {
+		PooledBuffer pooled = bufferPool.acquire(readSize.next());
+		int len;
+		try {
+			len = socketChannel.read(pooled.buffer());
+		} catch (IOException e) {
+			pooled.release();
+			throw (e);
+		}
+		if (len < 0) {
+			pooled.release();
+			// Disconnected!
+			onClose();
+		} else {
+			readSize.record(len);
+			pooled.buffer().flip();
+			onData(pooled);
+		}
 	}
 
-	int totalAvailable = 0;
-	ByteBuffer bb;
-	LinkedList<ByteBuffer> bbs = new LinkedList<>();
+	final ReadQueue readQueue = new ReadQueue();
 	Queue<ReadRequest> requests = new LinkedList<>();
+	private boolean inputClosed = false;
+	private int lowWatermark = DEFAULT_LOW_WATERMARK;
+	private int highWatermark = DEFAULT_HIGH_WATERMARK;
+	private boolean readPaused = false;
+
+	// Reading stops while more than highWatermark unread bytes are buffered and resumes once they drop to lowWatermark.
+	// A pending read that needs more bytes always resumes reading, so its size is what bounds the buffer.
+	public AsyncSocket setReadWatermarks(int lowWatermark, int highWatermark) {
+		if (lowWatermark < 0 || highWatermark < lowWatermark) throw (new IllegalArgumentException("Invalid watermarks " + lowWatermark + ", " + highWatermark));
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+		updateReadInterest();
+		return this;
+	}
+
+	public boolean isReadPaused() {
+		return readPaused;
+	}
 
 	void onData(ByteBuffer bb) {
-		totalAvailable += bb.remaining();
-		bbs.add(bb);
+		onData(PooledBuffer.wrap(bb));
+	}
+
+	void onData(PooledBuffer buffer) {
+		readQueue.add(buffer);
 		tryCouple();
 	}
 
-	byte readByte() {
-		if (bb == null || bb.remaining() <= 0) bb = bbs.poll();
-		totalAvailable--;
-		return (bb != null) ? bb.get() : 0;
+	// Either a buffer or a file region
+	static private final class WriteRequest {
+		final ByteBuffer buffer;
+		final Promise<?> promise;
+		// Released once the buffer was written
+		PooledBuffer pooled;
+		FileChannel file;
+		boolean ownsFile;
+		long position;
+		long remaining;
+
+		WriteRequest(ByteBuffer buffer, Promise<?> promise) {
+			this.buffer = buffer;
+			this.promise = promise;
+		}
+
+		WriteRequest(FileChannel file, boolean ownsFile, long position, long count, Promise<?> promise) {
+			this.buffer = null;
+			this.promise = promise;
+			this.file = file;
+			this.ownsFile = ownsFile;
+			this.position = position;
+			this.remaining = count;
+		}
+
+		boolean isDone() {
+			return (buffer != null) ? !buffer.hasRemaining() : (remaining == 0);
+		}
+
+		void dispose() {
+			if (pooled != null) {
+				pooled.release();
+				pooled = null;
+			}
+			if (file == null || !ownsFile) return;
+			try {
+				file.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private final ArrayDeque<WriteRequest> writes = new ArrayDeque<>();
+	// Bytes queued and not yet taken by the kernel
+	private long queuedBytes = 0;
+	private int writeLowWatermark = DEFAULT_LOW_WATERMARK;
+	private int writeHighWatermark = DEFAULT_HIGH_WATERMARK;
+	private boolean writePaused = false;
+	private final ArrayDeque<Promise<?>> writableWaiters = new ArrayDeque<>();
+	private boolean flushScheduled = false;
+	private boolean closing = false;
+	private boolean closed = false;
+
+	// The socket stops being writable once more than highWatermark bytes are queued and is again once they drop to
+	// lowWatermark. Writes are still accepted meanwhile, producers check isWritable or wait for writableAsync.
+	public AsyncSocket setWriteWatermarks(int lowWatermark, int highWatermark) {
+		if (lowWatermark < 0 || highWatermark < lowWatermark) throw (new IllegalArgumentException("Invalid watermarks " + lowWatermark + ", " + highWatermark));
+		this.writeLowWatermark = lowWatermark;
+		this.writeHighWatermark = highWatermark;
+		updateWritable();
+		return this;
+	}
+
+	public boolean isWritable() {
+		return !writePaused;
+	}
+
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	// Resolves once the socket is writable, right away when it already is. Rejects if the socket closes first.
+	public Promise<?> writableAsync() {
+		Promise<?> promise = new Promise<>();
+		if (closing || closed) {
+			promise.reject(new ClosedChannelException());
+		} else if (!writePaused) {
+			promise.resolve(null);
+		} else {
+			writableWaiters.add(promise);
+		}
+		return promise;
+	}
+
+	private void queueWrite(WriteRequest write) {
+		writes.add(write);
+		queuedBytes += (write.buffer != null) ? write.buffer.remaining() : write.remaining;
+		updateWritable();
 	}
 
+	private void updateWritable() {
+		if (!writePaused) {
+			if (queuedBytes > writeHighWatermark) writePaused = true;
+		} else if (queuedBytes <= writeLowWatermark) {
+			writePaused = false;
+			Promise<?> waiter;
+			while ((waiter = writableWaiters.poll()) != null) waiter.resolve(null);
+		}
+	}
+
+	// Queues the bytes, the promise resolves once the kernel took all of them.
+	// Writes issued in the same loop iteration are flushed together with a single gathering write.
+	public Promise<?> writeAsync(ByteBuffer buffer) {
+		Promise<?> promise = new Promise<>();
+		if (closing || closed) {
+			promise.reject(new ClosedChannelException());
+			return promise;
+		}
+		queueWrite(new WriteRequest(buffer, promise));
+		scheduleFlush();
+		return promise;
+	}
+
+	public Promise<?> writeAsync(byte[] bytes) {
+		return writeAsync(ByteBuffer.wrap(bytes));
+	}
+
+	// Takes over the caller's reference, the buffer is released once written or when the socket closes
+	public Promise<?> writeAsync(PooledBuffer buffer) {
+		if (closing || closed) buffer.release();
+		Promise<?> promise = writeAsync(buffer.buffer());
+		if (!closing && !closed) writes.peekLast().pooled = buffer;
+		return promise;
+	}
+
+	// Buffers of one encoded message go out together, the promise resolves once all were written
+	public <T> Promise<?> writeFrameAsync(FrameEncoder<T> encoder, T message) {
+		ArrayList<ByteBuffer> output = new ArrayList<>(2);
+		encoder.encode(message, output);
+		if (output.isEmpty()) return Promise.resolved(null);
+		int last = output.size() - 1;
+		if (!closing && !closed) {
+			for (int n = 0; n < last; n++) queueWrite(new WriteRequest(output.get(n), null));
+		}
+		return writeAsync(output.get(last));
+	}
+
+	// Sends count bytes of the file from position without copying them through the heap (sendfile where available).
+	// Queued after the pending writes, the promise resolves once the whole range was sent.
+	public Promise<?> sendFileAsync(Path path, long position, long count) {
+		Promise<?> promise = new Promise<>();
+		if (closing || closed) {
+			promise.reject(new ClosedChannelException());
+			return promise;
+		}
+		FileChannel file;
+		try {
+			file = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (IOException e) {
+			promise.reject(e);
+			return promise;
+		}
+		queueWrite(new WriteRequest(file, true, position, count, promise));
+		scheduleFlush();
+		return promise;
+	}
+
+	public Promise<?> sendFileAsync(Path path) throws IOException {
+		return sendFileAsync(path, 0, Files.size(path));
+	}
+
+	// The channel stays open, it must not be closed before the promise settles
+	public Promise<?> sendFileAsync(FileChannel file, long position, long count) {
+		Promise<?> promise = new Promise<>();
+		if (closing || closed) {
+			promise.reject(new ClosedChannelException());
+			return promise;
+		}
+		queueWrite(new WriteRequest(file, false, position, count, promise));
+		scheduleFlush();
+		return promise;
+	}
+
+	// Queued like writeAsync, without waiting for the flush
 	public AsyncSocket write(byte[] bytes) throws IOException {
-		socketChannel.write(ByteBuffer.wrap(bytes));
+		return write(ByteBuffer.wrap(bytes));
+	}
+
+	public AsyncSocket write(ByteBuffer buffer) throws IOException {
+		if (closing || closed) throw (new ClosedChannelException());
+		queueWrite(new WriteRequest(buffer, null));
+		scheduleFlush();
 		return this;
 	}
 
+	public AsyncSocket write(PooledBuffer buffer) throws IOException {
+		if (closing || closed) {
+			buffer.release();
+			throw (new ClosedChannelException());
+		}
+		write(buffer.buffer());
+		writes.peekLast().pooled = buffer;
+		return this;
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled) return;
+		flushScheduled = true;
+		if (loop != null) {
+			loop.enqueue(this::flush);
+		} else {
+			flush();
+		}
+	}
+
+	private void flush() {
+		flushScheduled = false;
+		// Flushed once connected
+		if (closed || connectPromise != null) return;
+		ByteBuffer[] gather = gatherArrays.get();
+		try {
+			while (!writes.isEmpty()) {
+				WriteRequest head = writes.peek();
+				long pending;
+				long written;
+				if (head.file != null) {
+					pending = Math.min(head.remaining, MAX_TRANSFER);
+					written = head.file.transferTo(head.position, pending, socketChannel);
+					if (written == 0 && head.position >= head.file.size()) throw (new EOFException("File ended at " + head.position + " with " + head.remaining + " bytes left to send"));
+					head.position += written;
+					head.remaining -= written;
+				} else {
+					// Buffers up to the next file region
+					int count = 0;
+					pending = 0;
+					for (WriteRequest write : writes) {
+						if (count == MAX_GATHER || write.buffer == null) break;
+						gather[count++] = write.buffer;
+						pending += write.buffer.remaining();
+					}
+					written = (count == 1) ? socketChannel.write(gather[0]) : socketChannel.write(gather, 0, count);
+				}
+				queuedBytes -= written;
+				while (!writes.isEmpty() && writes.peek().isDone()) {
+					WriteRequest write = writes.poll();
+					write.dispose();
+					if (write.promise != null) write.promise.resolve(null);
+				}
+				// The socket buffer is full, wait for OP_WRITE
+				if (written < pending) break;
+			}
+		} catch (IOException e) {
+			closeNow(e);
+			return;
+		} finally {
+			Arrays.fill(gather, null);
+		}
+		setInterest(SelectionKey.OP_WRITE, !writes.isEmpty());
+		if (closing && writes.isEmpty()) {
+			closeNow(null);
+			return;
+		}
+		updateWritable();
+	}
+
+	private void setInterest(int op, boolean enabled) {
+		if (key == null || !key.isValid()) return;
+		int ops = key.interestOps();
+		int newOps = enabled ? (ops | op) : (ops & ~op);
+		if (newOps != ops) key.interestOps(newOps);
+	}
+
 	void tryCouple() {
 		while (requests.size() > 0) {
 			ReadRequest request = requests.peek();
@@ -54,6 +459,26 @@ public class AsyncSocket {
 				break;
 			}
 		}
+		if (inputClosed || closed) {
+			ReadRequest request;
+			while ((request = requests.poll()) != null) request.fail(closed ? new ClosedChannelException() : new EOFException());
+		} else {
+			updateReadInterest();
+		}
+	}
+
+	private void updateReadInterest() {
+		if (inputClosed || closed) return;
+		int buffered = readQueue.available();
+		if (!readPaused) {
+			if (buffered > highWatermark && requests.isEmpty()) {
+				readPaused = true;
+				setInterest(SelectionKey.OP_READ, false);
+			}
+		} else if (buffered <= lowWatermark || !requests.isEmpty()) {
+			readPaused = false;
+			setInterest(SelectionKey.OP_READ, true);
+		}
 	}
 
 	public Promise<byte[]> readBytesAsync(int count) {
@@ -63,20 +488,95 @@ public class AsyncSocket {
 		return promise;
 	}
 
+	// Bytes up to and including c
 	public Promise<byte[]> readUntilAsync(byte c) {
+		return readUntilAsync(c, DEFAULT_MAX_DELIMITED_LENGTH);
+	}
+
+	// Rejects and stops reading when c isn't found within maxLength bytes
+	public Promise<byte[]> readUntilAsync(byte c, int maxLength) {
 		Promise<byte[]> promise = new Promise<>();
-		requests.add(new ReadRequestEndByte(c, promise));
+		requests.add(new ReadRequestEndByte<>(c, maxLength, false, promise));
 		tryCouple();
 		return promise;
 	}
 
+	// Same as readUntilAsync, but returns a view of the received buffer without copying when possible.
+	// Release the buffer once done with it.
+	public Promise<PooledBuffer> readUntilBufferAsync(byte c) {
+		return readUntilBufferAsync(c, DEFAULT_MAX_DELIMITED_LENGTH);
+	}
+
+	public Promise<PooledBuffer> readUntilBufferAsync(byte c, int maxLength) {
+		Promise<PooledBuffer> promise = new Promise<>();
+		requests.add(new ReadRequestEndByte<>(c, maxLength, true, promise));
+		tryCouple();
+		return promise;
+	}
+
+	// Next message of the decoder. Messages already queued are decoded without waiting for the socket,
+	// so a protocol awaits once per message instead of once per field.
+	// A decoder error rejects the read and stops reading, so an error response can still be written before closing.
+	public <T> Promise<T> readFrameAsync(FrameDecoder<T> decoder) {
+		Promise<T> promise = new Promise<>();
+		requests.add(new ReadRequestFrame<>(decoder, promise));
+		tryCouple();
+		return promise;
+	}
+
+	// Closes once the queued writes are flushed
 	public void close() throws IOException {
-		socketChannel.close();
+		if (closed) return;
+		if (writes.isEmpty()) {
+			closeNow(null);
+		} else {
+			closing = true;
+			scheduleFlush();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	// The peer closed its side, nothing more will be read
+	public boolean isInputClosed() {
+		return inputClosed;
+	}
+
+	public SocketAddress getRemoteAddress() throws IOException {
+		return socketChannel.getRemoteAddress();
+	}
+
+	void closeNow(IOException failure) {
+		if (closed) return;
+		closed = true;
+		if (connectTimeout != null) connectTimeout.cancel();
+		if (connectPromise != null) {
+			connectPromise.reject((failure != null) ? failure : new ClosedChannelException());
+			connectPromise = null;
+		}
+		try {
+			if (socketChannel != null) socketChannel.close();
+		} catch (IOException e) {
+		}
+		readQueue.clear();
+		WriteRequest write;
+		while ((write = writes.poll()) != null) {
+			write.dispose();
+			if (write.promise != null) write.promise.reject((failure != null) ? failure : new ClosedChannelException());
+		}
+		queuedBytes = 0;
+		Promise<?> waiter;
+		while ((waiter = writableWaiters.poll()) != null) waiter.reject((failure != null) ? failure : new ClosedChannelException());
+		tryCouple();
 	}
 }
 
 interface ReadRequest {
 	boolean chunk(AsyncSocket socket);
+
+	void fail(Exception exception);
 }
 
 class ReadRequestFixed implements ReadRequest {
@@ -91,43 +591,81 @@ class ReadRequestFixed implements ReadRequest {
 	}
 
 	public boolean chunk(AsyncSocket socket) {
-		while (this.index < buffer.length) {
-			if (socket.totalAvailable <= 0) return false;
-			this.buffer[this.index++] = socket.readByte();
-		}
+		int count = Math.min(buffer.length - index, socket.readQueue.available());
+		socket.readQueue.get(buffer, index, count);
+		index += count;
+		if (index < buffer.length) return false;
 		promise.resolve(this.buffer);
 		return true;
 	}
+
+	public void fail(Exception exception) {
+		promise.reject(exception);
+	}
 }
 
 
-class ReadRequestEndByte implements ReadRequest {
-	public ByteArrayOutputStream baos;
+class ReadRequestEndByte<T> implements ReadRequest {
 	public byte endByte;
-	public Promise<byte[]> promise;
+	public int maxLength;
+	public boolean asBuffer;
+	public Promise<T> promise;
+	// Bytes already searched, they stay queued until the end byte arrives
+	public int scanned = 0;
 
-	ReadRequestEndByte(byte endByte, Promise<byte[]> promise) {
-		this.baos = new ByteArrayOutputStream();
+	ReadRequestEndByte(byte endByte, int maxLength, boolean asBuffer, Promise<T> promise) {
 		this.endByte = endByte;
+		this.maxLength = maxLength;
+		this.asBuffer = asBuffer;
 		this.promise = promise;
 	}
 
 	public boolean chunk(AsyncSocket socket) {
-		while (socket.totalAvailable > 0) {
-			byte readByte = socket.readByte();
-			baos.write(readByte);
-			if (readByte == endByte) {
-				promise.resolve(baos.toByteArray());
-				return true;
-			}
+		int index = socket.readQueue.indexOf(endByte, scanned);
+		if (index < 0) {
+			scanned = socket.readQueue.available();
+			if (scanned < maxLength) return false;
+		}
+		// Stops reading like a decoder error, so a peer that never sends the delimiter can't buffer without bound
+		if (index < 0 || index >= maxLength) {
+			promise.reject(new IOException("Delimiter not found within " + maxLength + " bytes"));
+			socket.stopInput();
+			return true;
 		}
-		/*
-		byte[] data2 = baos.toByteArray();
-		for (int n = 0; n < data2.length; n++) {
-			System.out.println(":" + data2[n] + " - " + (char)data2[n]);
+		Object result = asBuffer ? socket.readQueue.getBuffer(index + 1) : socket.readQueue.getBytes(index + 1);
+		promise.resolve((T) result);
+		return true;
+	}
+
+	public void fail(Exception exception) {
+		promise.reject(exception);
+	}
+}
+
+class ReadRequestFrame<T> implements ReadRequest {
+	public FrameDecoder<T> decoder;
+	public Promise<T> promise;
+
+	ReadRequestFrame(FrameDecoder<T> decoder, Promise<T> promise) {
+		this.decoder = decoder;
+		this.promise = promise;
+	}
+
+	public boolean chunk(AsyncSocket socket) {
+		T message;
+		try {
+			message = decoder.decode(socket.readQueue);
+		} catch (IOException e) {
+			promise.reject(e);
+			socket.stopInput();
+			return true;
 		}
-		System.out.println("need more data! : " + baos.size() + " : " + endByte);
-		*/
-		return false;
+		if (message == null) return false;
+		promise.resolve(message);
+		return true;
+	}
+
+	public void fail(Exception exception) {
+		promise.reject(exception);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoop;
+import jawaitasync.loop.EventLoopGroup;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Accepts connections on one loop and hands them round robin to the loops of a worker group, so reading and
+ * writing scale past one core. With SocketOptions.setReusePort every worker binds its own listener on the same
+ * port instead and the kernel spreads the connections.
+ */
+public class AsyncSocketAcceptor {
+	public interface Handler {
+		// Runs on the worker loop the socket is registered with
+		void onSocket(AsyncSocket socket) throws Exception;
+	}
+
+	static private final class Listener {
+		final ServerSocketChannel channel;
+		final SelectorEventLoop loop;
+
+		Listener(ServerSocketChannel channel, SelectorEventLoop loop) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+	}
+
+	private final EventLoopGroup workers;
+	private final SocketOptions options;
+	private final Handler handler;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private volatile ErrorHandler errorHandler;
+
+	public AsyncSocketAcceptor(EventLoopGroup workers, Handler handler) {
+		this(workers, new SocketOptions(), handler);
+	}
+
+	public AsyncSocketAcceptor(EventLoopGroup workers, SocketOptions options, Handler handler) {
+		this.workers = workers;
+		this.options = options;
+		this.handler = handler;
+	}
+
+	// Receives the connections that failed while being accepted or set up, on the loop where they failed.
+	// Listening goes on. Without one they are dropped.
+	public AsyncSocketAcceptor setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	private void reportError(Exception exception) {
+		ErrorHandler errorHandler = this.errorHandler;
+		if (errorHandler != null) errorHandler.onError(exception);
+	}
+
+	// Without SO_REUSEPORT, connections are accepted on the current loop
+	public Promise<AsyncSocketAcceptor> bindAsync(SocketAddress address) {
+		Promise<AsyncSocketAcceptor> promise = new Promise<>();
+		// The workers may do all the binding, the calling loop waits for them
+		EventLoop caller = EventLoopHolder.current();
+		caller.refCountInc();
+		bindAsync((options.isReusePort() && SocketOptions.isReusePortSupported()) ? workers.get(0) : SelectorEventLoop.current(), 0, address, promise, caller);
+		return promise;
+	}
+
+	private void bindAsync(SelectorEventLoop loop, int index, SocketAddress address, Promise<AsyncSocketAcceptor> promise, EventLoop caller) {
+		loop.enqueue(() -> {
+			ServerSocketChannel channel = null;
+			try {
+				channel = UnixDomainSockets.openServer(address);
+				options.applyTo(channel);
+				boolean perWorker = options.useReusePort(channel);
+				channel.bind(address, options.getBacklog());
+				ServerSocketChannel bound = channel;
+				loop.register(channel, SelectionKey.OP_ACCEPT, (key) -> onAcceptable(bound, loop, !perWorker));
+				listeners.add(new Listener(channel, loop));
+				if (perWorker && index + 1 < workers.size()) {
+					// The next listeners take the port the first one got
+					bindAsync(workers.get(index + 1), index + 1, channel.getLocalAddress(), promise, caller);
+				} else {
+					promise.resolve(this);
+					caller.refCountDec();
+				}
+			} catch (Exception e) {
+				if (channel != null) {
+					try {
+						channel.close();
+					} catch (IOException e2) {
+					}
+				}
+				close();
+				promise.reject(e);
+				caller.refCountDec();
+			}
+		});
+	}
+
+	// A failing connection (EMFILE, ECONNABORTED...) is only reported, the listening socket must stay open
+	private void onAcceptable(ServerSocketChannel channel, SelectorEventLoop loop, boolean dispatch) {
+		while (true) {
+			SocketChannel sc;
+			try {
+				sc = channel.accept();
+			} catch (IOException e) {
+				reportError(e);
+				return;
+			}
+			if (sc == null) return;
+			try {
+				options.applyTo(sc);
+			} catch (IOException e) {
+				try {
+					sc.close();
+				} catch (IOException e2) {
+				}
+				reportError(e);
+				continue;
+			}
+			SelectorEventLoop worker = dispatch ? workers.next() : loop;
+			if (worker == loop) {
+				start(worker, sc);
+			} else {
+				SocketChannel accepted = sc;
+				worker.enqueue(() -> start(worker, accepted));
+			}
+		}
+	}
+
+	private void start(SelectorEventLoop worker, SocketChannel sc) {
+		AsyncSocket socket = new AsyncSocket(sc);
+		try {
+			socket.register(worker);
+			handler.onSocket(socket);
+		} catch (Exception e) {
+			try {
+				socket.close();
+			} catch (IOException e2) {
+			}
+			reportError(e);
+		}
+	}
+
+	public int getLocalPort() throws IOException {
+		return ((InetSocketAddress) listeners.get(0).channel.getLocalAddress()).getPort();
+	}
+
+	// Number of bound listeners, one per worker with SO_REUSEPORT
+	public int getListenerCount() {
+		return listeners.size();
+	}
+
+	// Stops accepting, accepted sockets stay open
+	public void close() {
+		for (Listener listener : listeners) {
+			listener.loop.enqueue(() -> {
+				try {
+					SocketAddress address = listener.channel.getLocalAddress();
+					listener.channel.close();
+					UnixDomainSockets.deleteSocketFile(address);
+				} catch (IOException e) {
+				}
+			});
+		}
+		listeners.clear();
+	}
+}
@@ -1,88 +1,97 @@
 package jawaitasync.tools;
 
 import jawaitasync.Promise;
-import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.channels.spi.SelectorProvider;
 import java.util.LinkedList;
 import java.util.Queue;
 
 public class AsyncSocketListener {
-	public Promise<AsyncSocketListener> bindAsync(SocketAddress socketAddress) {
-		Promise promise = new Promise();
-		EventLoopHolder.instance.refCountInc();
-		new Thread(() -> {
-			try {
-				try (Selector selector = Selector.open()) {
-					SelectorProvider selectorProvider = selector.provider();
-					ServerSocketChannel ssc = selectorProvider.openServerSocketChannel();
-					try {
-						ssc.bind(socketAddress, 20);
-						ssc.configureBlocking(false);
-						ssc.register(selector, SelectionKey.OP_ACCEPT);
-						promise.resolve(this);
-					} catch (Exception e) {
-						e.printStackTrace();
-						promise.reject(e);
-						throw (e);
-					}
+	private SelectorEventLoop loop;
+	private ServerSocketChannel serverChannel;
+	private SocketAddress boundAddress;
+	private final SocketOptions options;
+	private ErrorHandler errorHandler;
 
-					while (true) {
-						//System.out.println("select0");
-						int readyChannels = selector.select();
-						//System.out.println("select: " + readyChannels);
-						if (readyChannels == 0) continue;
+	public AsyncSocketListener() {
+		this(new SocketOptions());
+	}
 
-						for (SelectionKey key : selector.selectedKeys()) {
-							try {
-								//System.out.println(key.interestOps() + ":" + key.channel());
-								if (key.isAcceptable()) {
-									ServerSocketChannel ssc2 = (ServerSocketChannel) key.channel();
-									SocketChannel sc = ssc2.accept();
-									sc.configureBlocking(false);
-									sc.register(selector, SelectionKey.OP_READ);
-									AsyncSocket as = new AsyncSocket(sc);
-									sc.keyFor(selector).attach(as);
-									onSocket(as);
-									//System.out.println("accepted1");
-								} else if (key.isReadable()) {
-									AsyncSocket as = (AsyncSocket) key.attachment();
-									ByteBuffer bb = ByteBuffer.allocate(8 * 1024);
-									int len = as.socketChannel.read(bb);
-									if (len < 0) {
-										// Disconnected!
-										as.onClose();
-									} else {
-										bb.flip();
-										//System.out.println("remaining:" + bb.remaining());
+	public AsyncSocketListener(SocketOptions options) {
+		this.options = options;
+	}
 
-										as.onData(bb);
-									}
-									//System.out.println(as);
-								}
-							} catch (Exception e) {
-								//e.printStackTrace();
-								key.cancel();
-							}
-						}
-						selector.selectedKeys().clear();
-					}
-				}
+	// Receives the connections that failed while being accepted, listening goes on. Without one they are dropped.
+	public AsyncSocketListener setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	private void reportError(Exception exception) {
+		if (errorHandler != null) errorHandler.onError(exception);
+	}
+
+	// Accepts and reads on the current loop's selector, so sockets and their promises stay on that loop thread.
+	public Promise<AsyncSocketListener> bindAsync(SocketAddress socketAddress) {
+		Promise<AsyncSocketListener> promise = new Promise<>();
+		loop = SelectorEventLoop.current();
+		loop.enqueue(() -> {
+			try {
+				serverChannel = UnixDomainSockets.openServer(socketAddress);
+				options.applyTo(serverChannel);
+				serverChannel.bind(socketAddress, options.getBacklog());
+				boundAddress = serverChannel.getLocalAddress();
+				loop.register(serverChannel, SelectionKey.OP_ACCEPT, (key) -> onAcceptable());
+				promise.resolve(this);
 			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				EventLoopHolder.instance.refCountDec();
+				promise.reject(e);
 			}
-		}).start();
+		});
 		return promise;
 	}
 
+	// A failing connection (EMFILE, ECONNABORTED...) is only reported, the listening socket must stay open
+	private void onAcceptable() {
+		while (true) {
+			SocketChannel sc;
+			try {
+				sc = serverChannel.accept();
+			} catch (IOException e) {
+				reportError(e);
+				return;
+			}
+			if (sc == null) return;
+			AsyncSocket as = new AsyncSocket(sc);
+			try {
+				options.applyTo(sc);
+				as.register(loop);
+			} catch (IOException e) {
+				try {
+					sc.close();
+				} catch (IOException e2) {
+				}
+				reportError(e);
+				continue;
+			}
+			onSocket(as);
+		}
+	}
+
+	public int getLocalPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	public void close() throws IOException {
+		if (serverChannel != null) serverChannel.close();
+		UnixDomainSockets.deleteSocketFile(boundAddress);
+	}
+
 	Queue<AsyncSocket> asList = new LinkedList<>();
 	Queue<Promise<AsyncSocket>> promiseList = new LinkedList<>();
 
@@ -0,0 +1,207 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.SelectorEventLoop;
+import jawaitasync.loop.Timeout;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Outbound connections kept open per remote address and reused between requests.
+ * Like the sockets it holds, a pool belongs to the loop that created it and must only be used from there.
+ */
+public class AsyncSocketPool {
+	static public final int DEFAULT_MAX_PER_HOST = 16;
+	static public final int DEFAULT_IDLE_TIMEOUT = 60_000;
+
+	public interface HealthCheck {
+		// Called before an idle socket is handed out again, unhealthy sockets are closed
+		boolean isHealthy(AsyncSocket socket);
+	}
+
+	// Idle sockets are registered for reads, so a peer that hung up or sent unexpected data shows up here for free
+	static public final HealthCheck DEFAULT_HEALTH_CHECK = (socket) -> !socket.isClosed() && !socket.isInputClosed() && socket.readQueue.available() == 0;
+
+	static private final class IdleSocket {
+		final AsyncSocket socket;
+		final long since;
+
+		IdleSocket(AsyncSocket socket, long since) {
+			this.socket = socket;
+			this.since = since;
+		}
+	}
+
+	static private final class Host {
+		final SocketAddress address;
+		// Most recently released first, so the rest ages out
+		final ArrayDeque<IdleSocket> idle = new ArrayDeque<>();
+		final ArrayDeque<Promise<AsyncSocket>> waiters = new ArrayDeque<>();
+		// Leased, idle and connecting sockets
+		int open = 0;
+
+		Host(SocketAddress address) {
+			this.address = address;
+		}
+	}
+
+	private final SelectorEventLoop loop;
+	private final SocketOptions options;
+	private final int maxPerHost;
+	private final int idleTimeout;
+	private final HealthCheck healthCheck;
+	private final Map<SocketAddress, Host> hosts = new HashMap<>();
+	private final Map<AsyncSocket, Host> leased = new IdentityHashMap<>();
+	private Timeout evictionTimer;
+	private boolean closed = false;
+
+	public AsyncSocketPool() {
+		this(new SocketOptions(), DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT, DEFAULT_HEALTH_CHECK);
+	}
+
+	// idleTimeout: milliseconds an unused socket stays open
+	public AsyncSocketPool(SocketOptions options, int maxPerHost, int idleTimeout, HealthCheck healthCheck) {
+		if (maxPerHost < 1) throw (new IllegalArgumentException("maxPerHost must be at least 1"));
+		this.loop = SelectorEventLoop.current();
+		this.options = options;
+		this.maxPerHost = maxPerHost;
+		this.idleTimeout = idleTimeout;
+		this.healthCheck = healthCheck;
+	}
+
+	// An idle healthy socket, a new connection, or the next released one once maxPerHost are open.
+	// Give it back with release, or discard if it can't be reused.
+	public Promise<AsyncSocket> acquireAsync(SocketAddress address) {
+		Promise<AsyncSocket> promise = new Promise<>();
+		if (closed) {
+			promise.reject(new ClosedChannelException());
+			return promise;
+		}
+		Host host = hosts.get(address);
+		if (host == null) hosts.put(address, host = new Host(address));
+		IdleSocket idle;
+		while ((idle = host.idle.poll()) != null) {
+			if (healthCheck.isHealthy(idle.socket)) {
+				lease(host, idle.socket, promise);
+				return promise;
+			}
+			closeSocket(host, idle.socket);
+		}
+		if (host.open < maxPerHost) {
+			connect(host, promise);
+		} else {
+			host.waiters.add(promise);
+		}
+		return promise;
+	}
+
+	public void release(AsyncSocket socket) {
+		Host host = leased.remove(socket);
+		if (host == null) return;
+		if (closed || !healthCheck.isHealthy(socket)) {
+			closeSocket(host, socket);
+			return;
+		}
+		Promise<AsyncSocket> waiter = host.waiters.poll();
+		if (waiter != null) {
+			lease(host, socket, waiter);
+		} else {
+			host.idle.push(new IdleSocket(socket, System.nanoTime()));
+			scheduleEviction();
+		}
+	}
+
+	// For sockets left in an unknown state, for example after a failed request
+	public void discard(AsyncSocket socket) {
+		Host host = leased.remove(socket);
+		if (host != null) closeSocket(host, socket);
+	}
+
+	public int getOpenCount(SocketAddress address) {
+		Host host = hosts.get(address);
+		return (host != null) ? host.open : 0;
+	}
+
+	public int getIdleCount(SocketAddress address) {
+		Host host = hosts.get(address);
+		return (host != null) ? host.idle.size() : 0;
+	}
+
+	// Closes idle sockets and rejects waiters, leased sockets are closed when released
+	public void close() {
+		closed = true;
+		if (evictionTimer != null) evictionTimer.cancel();
+		for (Host host : hosts.values()) {
+			Promise<AsyncSocket> waiter;
+			while ((waiter = host.waiters.poll()) != null) waiter.reject(new ClosedChannelException());
+			IdleSocket idle;
+			while ((idle = host.idle.poll()) != null) closeSocket(host, idle.socket);
+		}
+	}
+
+	private void lease(Host host, AsyncSocket socket, Promise<AsyncSocket> promise) {
+		leased.put(socket, host);
+		promise.resolve(socket);
+	}
+
+	private void connect(Host host, Promise<AsyncSocket> promise) {
+		host.open++;
+		((Promise<Object>) (Promise<?>) AsyncSocket.connectAsync(host.address, options)).then((result) -> {
+			if (result instanceof Exception) {
+				host.open--;
+				promise.reject((Exception) result);
+				// Waiters get their own attempt instead of all failing on this one
+				Promise<AsyncSocket> waiter = host.waiters.poll();
+				if (waiter != null) connect(host, waiter);
+			} else if (closed) {
+				closeSocket(host, (AsyncSocket) result);
+				promise.reject(new ClosedChannelException());
+			} else {
+				lease(host, (AsyncSocket) result, promise);
+			}
+		});
+	}
+
+	private void closeSocket(Host host, AsyncSocket socket) {
+		host.open--;
+		try {
+			socket.close();
+		} catch (IOException e) {
+		}
+		Promise<AsyncSocket> waiter = host.waiters.poll();
+		if (waiter != null) connect(host, waiter);
+	}
+
+	private void scheduleEviction() {
+		if (evictionTimer != null || idleTimeout <= 0) return;
+		evictionTimer = loop.setTimeout(() -> {
+			evictionTimer = null;
+			evictIdle();
+		}, idleTimeout);
+	}
+
+	private void evictIdle() {
+		long limit = System.nanoTime() - idleTimeout * 1_000_000L;
+		boolean remaining = false;
+		Iterator<Host> hostIterator = hosts.values().iterator();
+		while (hostIterator.hasNext()) {
+			Host host = hostIterator.next();
+			// Oldest sockets are at the tail
+			IdleSocket oldest;
+			while ((oldest = host.idle.peekLast()) != null && oldest.since - limit <= 0) {
+				host.idle.pollLast();
+				closeSocket(host, oldest.socket);
+			}
+			if (!host.idle.isEmpty()) remaining = true;
+			if (host.open == 0 && host.waiters.isEmpty()) hostIterator.remove();
+		}
+		if (remaining) scheduleEviction();
+	}
+}
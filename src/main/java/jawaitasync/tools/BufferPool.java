@@ -0,0 +1,90 @@
+package jawaitasync.tools;
+
+import jawaitasync.loop.MpscQueue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Direct buffers in power of two size classes. Every thread carves its buffers out of its own slabs and
+ * reuses them without synchronization. Buffers released on other threads are handed back through a queue.
+ */
+public final class BufferPool {
+	static public final int MIN_SIZE = 512;
+	static public final BufferPool DEFAULT = new BufferPool(64 * 1024, 256 * 1024);
+
+	private final int maxSize;
+	private final int slabSize;
+	private final int sizeClasses;
+	private final ThreadLocal<Arena> arenas = new ThreadLocal<Arena>() {
+		@Override
+		protected Arena initialValue() {
+			return new Arena(Thread.currentThread());
+		}
+	};
+
+	// maxSize: biggest pooled buffer, slabSize: direct memory allocated at once
+	public BufferPool(int maxSize, int slabSize) {
+		if (Integer.bitCount(maxSize) != 1 || maxSize < MIN_SIZE) throw (new IllegalArgumentException("maxSize must be a power of two >= " + MIN_SIZE));
+		this.maxSize = maxSize;
+		this.slabSize = Math.max(slabSize, maxSize);
+		this.sizeClasses = Integer.numberOfTrailingZeros(maxSize) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	// Cleared buffer with a capacity of at least size (the next power of two), holding one reference.
+	// Sizes over maxSize get an unpooled heap buffer.
+	public PooledBuffer acquire(int size) {
+		if (size > maxSize) return PooledBuffer.wrap(ByteBuffer.allocate(size));
+		return arenas.get().acquire(sizeClass(size));
+	}
+
+	static private int sizeClass(int size) {
+		if (size <= MIN_SIZE) return 0;
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+	}
+
+	final class Arena {
+		private final Thread owner;
+		private final ArrayDeque<PooledBuffer>[] free;
+		private final MpscQueue<PooledBuffer> returned = new MpscQueue<>(256);
+
+		Arena(Thread owner) {
+			this.owner = owner;
+			this.free = new ArrayDeque[sizeClasses];
+			for (int n = 0; n < sizeClasses; n++) free[n] = new ArrayDeque<>();
+		}
+
+		PooledBuffer acquire(int sizeClass) {
+			PooledBuffer buffer;
+			while ((buffer = returned.poll()) != null) free[buffer.sizeClass].push(buffer);
+			buffer = free[sizeClass].poll();
+			if (buffer == null) buffer = carveSlab(sizeClass);
+			buffer.reset();
+			return buffer;
+		}
+
+		private PooledBuffer carveSlab(int sizeClass) {
+			int size = MIN_SIZE << sizeClass;
+			ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+			for (int offset = size; offset + size <= slabSize; offset += size) {
+				slab.limit(offset + size).position(offset);
+				free[sizeClass].add(new PooledBuffer(slab.slice(), this, sizeClass));
+			}
+			slab.limit(size).position(0);
+			return new PooledBuffer(slab.slice(), this, sizeClass);
+		}
+
+		void recycle(PooledBuffer buffer) {
+			if (Thread.currentThread() == owner) {
+				// LIFO, the most recently used memory is the most likely to be cached
+				free[buffer.sizeClass].push(buffer);
+			} else {
+				returned.offer(buffer);
+			}
+		}
+	}
+}
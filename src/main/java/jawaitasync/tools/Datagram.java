@@ -0,0 +1,26 @@
+package jawaitasync.tools;
+
+import java.net.SocketAddress;
+
+// Received datagram. The payload is pooled, release it once done.
+public final class Datagram {
+	private final SocketAddress address;
+	private final PooledBuffer data;
+
+	Datagram(SocketAddress address, PooledBuffer data) {
+		this.address = address;
+		this.data = data;
+	}
+
+	public SocketAddress getAddress() {
+		return address;
+	}
+
+	public PooledBuffer getData() {
+		return data;
+	}
+
+	public void release() {
+		data.release();
+	}
+}
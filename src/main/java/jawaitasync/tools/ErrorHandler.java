@@ -0,0 +1,6 @@
+package jawaitasync.tools;
+
+// Receives failures no promise reports, like a connection that broke while being accepted. Runs on the loop that hit them.
+public interface ErrorHandler {
+	void onError(Exception exception);
+}
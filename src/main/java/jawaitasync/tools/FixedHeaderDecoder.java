@@ -0,0 +1,59 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages made of a fixed size header and a body whose length the header gives.
+ * The header is decoded once per message, however the bytes arrive.
+ */
+public abstract class FixedHeaderDecoder<T> implements FrameDecoder<T> {
+	static public final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+	private final int headerSize;
+	private final int maxFrameLength;
+	private final ByteBuffer header;
+	private boolean hasHeader = false;
+	private int bodyLength;
+
+	protected FixedHeaderDecoder(int headerSize) {
+		this(headerSize, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	// maxFrameLength bounds the body, the header is not counted
+	protected FixedHeaderDecoder(int headerSize, int maxFrameLength) {
+		this.headerSize = headerSize;
+		this.maxFrameLength = maxFrameLength;
+		this.header = ByteBuffer.allocate(headerSize);
+	}
+
+	// Body length from the header, may throw on invalid headers
+	abstract protected int bodyLength(ByteBuffer header) throws IOException;
+
+	// The header buffer is reused, copy what is needed. The body is owned by the callee once it returns,
+	// if it throws the body is released here so it must not have been released already.
+	abstract protected T decode(ByteBuffer header, PooledBuffer body) throws IOException;
+
+	@Override
+	public T decode(ReadQueue input) throws IOException {
+		if (!hasHeader) {
+			if (input.available() < headerSize) return null;
+			input.get(header.array(), 0, headerSize);
+			header.clear();
+			int length = bodyLength(header);
+			if (length < 0 || length > maxFrameLength) throw (new IOException("Frame length " + length + " exceeds " + maxFrameLength));
+			bodyLength = length;
+			header.clear();
+			hasHeader = true;
+		}
+		if (input.available() < bodyLength) return null;
+		hasHeader = false;
+		PooledBuffer body = input.getBuffer(bodyLength);
+		try {
+			return decode(header, body);
+		} catch (IOException | RuntimeException e) {
+			body.release();
+			throw e;
+		}
+	}
+}
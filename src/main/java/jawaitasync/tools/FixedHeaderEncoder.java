@@ -0,0 +1,28 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Counterpart of FixedHeaderDecoder: a header buffer of headerSize bytes followed by the body
+public abstract class FixedHeaderEncoder<T> implements FrameEncoder<T> {
+	private final int headerSize;
+
+	protected FixedHeaderEncoder(int headerSize) {
+		this.headerSize = headerSize;
+	}
+
+	abstract protected ByteBuffer body(T message);
+
+	// Fills header with the fields of message, the body is already encoded
+	abstract protected void writeHeader(T message, ByteBuffer body, ByteBuffer header);
+
+	@Override
+	public void encode(T message, List<ByteBuffer> output) {
+		ByteBuffer body = body(message);
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		writeHeader(message, body, header);
+		header.clear();
+		output.add(header);
+		output.add(body);
+	}
+}
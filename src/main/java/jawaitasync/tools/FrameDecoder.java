@@ -0,0 +1,14 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+
+/**
+ * Turns queued socket input into messages, see AsyncSocket.readFrameAsync.
+ * Decoders may keep state between calls, so each socket gets its own instance.
+ */
+public interface FrameDecoder<T> {
+	// Consumes one whole message from input and returns it, or returns null without consuming anything
+	// (or only what the decoder keeps track of) while the message isn't complete yet.
+	// Throwing fails the read and stops reading from the socket.
+	T decode(ReadQueue input) throws IOException;
+}
@@ -0,0 +1,9 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Turns a message into the buffers to write, see AsyncSocket.writeFrameAsync. Several buffers go out in one gathering write.
+public interface FrameEncoder<T> {
+	void encode(T message, List<ByteBuffer> output);
+}
@@ -0,0 +1,33 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+// Frames prefixed with their payload length. Payloads are views of the received buffers when possible, release them once done.
+public class LengthFieldDecoder implements FrameDecoder<PooledBuffer> {
+	private final int lengthFieldSize;
+	private final ByteOrder order;
+	private final int maxFrameLength;
+
+	// 4 byte big endian length
+	public LengthFieldDecoder(int maxFrameLength) {
+		this(4, ByteOrder.BIG_ENDIAN, maxFrameLength);
+	}
+
+	public LengthFieldDecoder(int lengthFieldSize, ByteOrder order, int maxFrameLength) {
+		if (lengthFieldSize < 1 || lengthFieldSize > 8) throw (new IllegalArgumentException("lengthFieldSize must be between 1 and 8"));
+		this.lengthFieldSize = lengthFieldSize;
+		this.order = order;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	@Override
+	public PooledBuffer decode(ReadQueue input) throws IOException {
+		if (input.available() < lengthFieldSize) return null;
+		long length = input.getUnsigned(0, lengthFieldSize, order);
+		if (length < 0 || length > maxFrameLength) throw (new IOException("Frame length " + length + " exceeds " + maxFrameLength));
+		if (input.available() < lengthFieldSize + length) return null;
+		input.skip(lengthFieldSize);
+		return input.getBuffer((int) length);
+	}
+}
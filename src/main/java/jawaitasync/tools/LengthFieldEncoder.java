@@ -0,0 +1,34 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+// Prefixes the remaining bytes of each buffer with their length, counterpart of LengthFieldDecoder
+public class LengthFieldEncoder implements FrameEncoder<ByteBuffer> {
+	private final int lengthFieldSize;
+	private final ByteOrder order;
+
+	public LengthFieldEncoder() {
+		this(4, ByteOrder.BIG_ENDIAN);
+	}
+
+	public LengthFieldEncoder(int lengthFieldSize, ByteOrder order) {
+		if (lengthFieldSize < 1 || lengthFieldSize > 8) throw (new IllegalArgumentException("lengthFieldSize must be between 1 and 8"));
+		this.lengthFieldSize = lengthFieldSize;
+		this.order = order;
+	}
+
+	@Override
+	public void encode(ByteBuffer message, List<ByteBuffer> output) {
+		long length = message.remaining();
+		if (lengthFieldSize < 8 && (length >>> (lengthFieldSize * 8)) != 0) throw (new IllegalArgumentException("Frame length " + length + " doesn't fit in " + lengthFieldSize + " bytes"));
+		byte[] header = new byte[lengthFieldSize];
+		for (int n = 0; n < lengthFieldSize; n++) {
+			int shift = (order == ByteOrder.BIG_ENDIAN) ? (lengthFieldSize - 1 - n) * 8 : n * 8;
+			header[n] = (byte) (length >>> shift);
+		}
+		output.add(ByteBuffer.wrap(header));
+		output.add(message);
+	}
+}
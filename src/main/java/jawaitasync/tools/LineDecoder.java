@@ -0,0 +1,38 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// Lines ending with \n, without the terminator (nor a preceding \r)
+public class LineDecoder implements FrameDecoder<String> {
+	private final Charset charset;
+	private final int maxLineLength;
+	// Bytes already searched, a partial line is only scanned once
+	private int scanned = 0;
+
+	public LineDecoder(int maxLineLength) {
+		this(StandardCharsets.UTF_8, maxLineLength);
+	}
+
+	public LineDecoder(Charset charset, int maxLineLength) {
+		this.charset = charset;
+		this.maxLineLength = maxLineLength;
+	}
+
+	@Override
+	public String decode(ReadQueue input) throws IOException {
+		int index = input.indexOf((byte) '\n', scanned);
+		if (index < 0) {
+			scanned = input.available();
+			if (scanned > maxLineLength) throw (new IOException("Line exceeds " + maxLineLength + " bytes"));
+			return null;
+		}
+		scanned = 0;
+		if (index > maxLineLength) throw (new IOException("Line exceeds " + maxLineLength + " bytes"));
+		int length = (index > 0 && input.getByte(index - 1) == '\r') ? index - 1 : index;
+		String line = new String(input.getBytes(length), charset);
+		input.skip(index + 1 - length);
+		return line;
+	}
+}
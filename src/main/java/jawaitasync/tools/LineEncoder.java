@@ -0,0 +1,28 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Writes each string followed by \n
+public class LineEncoder implements FrameEncoder<String> {
+	private final Charset charset;
+
+	public LineEncoder() {
+		this(StandardCharsets.UTF_8);
+	}
+
+	public LineEncoder(Charset charset) {
+		this.charset = charset;
+	}
+
+	@Override
+	public void encode(String message, List<ByteBuffer> output) {
+		byte[] bytes = message.getBytes(charset);
+		byte[] line = new byte[bytes.length + 1];
+		System.arraycopy(bytes, 0, line, 0, bytes.length);
+		line[bytes.length] = '\n';
+		output.add(ByteBuffer.wrap(line));
+	}
+}
@@ -0,0 +1,76 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Reference counted buffer from a BufferPool. The memory goes back to the pool once every reference is released,
+ * it must not be used after that. Buffers made with wrap aren't pooled and just ignore the counting.
+ */
+public final class PooledBuffer {
+	static private final AtomicIntegerFieldUpdater<PooledBuffer> REF_COUNT = AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCount");
+
+	private final ByteBuffer buffer;
+	// Slices count their references on the buffer they were made from
+	private final PooledBuffer root;
+	final BufferPool.Arena arena;
+	final int sizeClass;
+	private volatile int refCount;
+
+	PooledBuffer(ByteBuffer buffer, BufferPool.Arena arena, int sizeClass) {
+		this.buffer = buffer;
+		this.root = this;
+		this.arena = arena;
+		this.sizeClass = sizeClass;
+	}
+
+	private PooledBuffer(ByteBuffer buffer, PooledBuffer root) {
+		this.buffer = buffer;
+		this.root = root;
+		this.arena = null;
+		this.sizeClass = -1;
+	}
+
+	static public PooledBuffer wrap(ByteBuffer buffer) {
+		return new PooledBuffer(buffer, null, -1);
+	}
+
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	public boolean isPooled() {
+		return root.arena != null;
+	}
+
+	public PooledBuffer retain() {
+		if (root.arena != null) {
+			int count = REF_COUNT.getAndIncrement(root);
+			if (count <= 0) throw (new IllegalStateException("Buffer already released"));
+		}
+		return this;
+	}
+
+	public void release() {
+		if (root.arena == null) return;
+		int count = REF_COUNT.decrementAndGet(root);
+		if (count == 0) {
+			root.arena.recycle(root);
+		} else if (count < 0) {
+			throw (new IllegalStateException("Buffer released too many times"));
+		}
+	}
+
+	// length bytes from the current position, sharing the memory. The slice holds its own reference.
+	public PooledBuffer retainedSlice(int length) {
+		ByteBuffer slice = buffer.slice();
+		slice.limit(length);
+		retain();
+		return new PooledBuffer(slice, root);
+	}
+
+	void reset() {
+		buffer.clear();
+		refCount = 1;
+	}
+}
@@ -0,0 +1,176 @@
+package jawaitasync.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Received buffers waiting to be read. Searches go a word at a time and reads copy whole runs,
+ * so nothing touches the bytes one by one. Offsets are relative to the first unread byte.
+ * Pooled buffers are released as soon as all their bytes were read.
+ */
+public final class ReadQueue {
+	static private final long ONES = 0x0101010101010101L;
+	static private final long HIGHS = 0x8080808080808080L;
+
+	private final ArrayDeque<PooledBuffer> buffers = new ArrayDeque<>();
+	private int available = 0;
+
+	public int available() {
+		return available;
+	}
+
+	public void add(ByteBuffer buffer) {
+		add(PooledBuffer.wrap(buffer));
+	}
+
+	// Takes over the reference, the remaining bytes of the buffer are queued.
+	public void add(PooledBuffer pooled) {
+		ByteBuffer buffer = pooled.buffer();
+		if (!buffer.hasRemaining()) {
+			pooled.release();
+			return;
+		}
+		// Words are read little endian, so the lowest byte of a word is the first one in memory
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffers.add(pooled);
+		available += buffer.remaining();
+	}
+
+	// Offset of the first value byte at or after from, -1 if it isn't queued yet.
+	public int indexOf(byte value, int from) {
+		if (from >= available) return -1;
+		long pattern = (value & 0xFFL) * ONES;
+		int base = 0;
+		for (PooledBuffer pooled : buffers) {
+			ByteBuffer buffer = pooled.buffer();
+			int remaining = buffer.remaining();
+			if (from < base + remaining) {
+				int start = buffer.position() + Math.max(0, from - base);
+				int index = indexOf(buffer, start, buffer.limit(), value, pattern);
+				if (index >= 0) return base + index - buffer.position();
+			}
+			base += remaining;
+		}
+		return -1;
+	}
+
+	static private int indexOf(ByteBuffer buffer, int start, int end, byte value, long pattern) {
+		int n = start;
+		for (; n + 8 <= end; n += 8) {
+			long word = buffer.getLong(n) ^ pattern;
+			// Sets the high bit of the bytes that were zero, possibly also of some after the first match
+			long found = (word - ONES) & ~word & HIGHS;
+			if (found != 0) return n + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+		for (; n < end; n++) {
+			if (buffer.get(n) == value) return n;
+		}
+		return -1;
+	}
+
+	// Byte at offset without consuming it
+	public byte getByte(int index) {
+		if (index < 0 || index >= available) throw (new IndexOutOfBoundsException("index " + index + ", available " + available));
+		for (PooledBuffer pooled : buffers) {
+			ByteBuffer buffer = pooled.buffer();
+			if (index < buffer.remaining()) return buffer.get(buffer.position() + index);
+			index -= buffer.remaining();
+		}
+		throw (new IllegalStateException());
+	}
+
+	// Unsigned integer of size bytes (1 to 8) at offset, without consuming it
+	public long getUnsigned(int index, int size, ByteOrder order) {
+		checkAvailable(index + size);
+		long value = 0;
+		if (order == ByteOrder.BIG_ENDIAN) {
+			for (int n = 0; n < size; n++) value = (value << 8) | (getByte(index + n) & 0xFF);
+		} else {
+			for (int n = size - 1; n >= 0; n--) value = (value << 8) | (getByte(index + n) & 0xFF);
+		}
+		return value;
+	}
+
+	// Copies length bytes from offset without consuming them
+	public void peek(int index, byte[] destination, int offset, int length) {
+		checkAvailable(index + length);
+		for (PooledBuffer pooled : buffers) {
+			if (length == 0) break;
+			ByteBuffer buffer = pooled.buffer();
+			int remaining = buffer.remaining();
+			if (index < remaining) {
+				int count = Math.min(length, remaining - index);
+				ByteBuffer view = buffer.duplicate();
+				view.position(buffer.position() + index);
+				view.get(destination, offset, count);
+				offset += count;
+				length -= count;
+				index = 0;
+			} else {
+				index -= remaining;
+			}
+		}
+	}
+
+	// Copies and consumes length bytes, they must be available.
+	public void get(byte[] destination, int offset, int length) {
+		checkAvailable(length);
+		while (length > 0) {
+			ByteBuffer buffer = buffers.peek().buffer();
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(destination, offset, count);
+			offset += count;
+			length -= count;
+			consumed(buffer, count);
+		}
+	}
+
+	public byte[] getBytes(int length) {
+		byte[] bytes = new byte[length];
+		get(bytes, 0, length);
+		return bytes;
+	}
+
+	// Consumes length bytes. When they all sit in one buffer the result is a view of it and nothing is copied.
+	// The caller owns the returned reference and releases it once done.
+	public PooledBuffer getBuffer(int length) {
+		checkAvailable(length);
+		PooledBuffer first = buffers.peek();
+		if (first != null && first.buffer().remaining() >= length) {
+			PooledBuffer slice = first.retainedSlice(length);
+			first.buffer().position(first.buffer().position() + length);
+			consumed(first.buffer(), length);
+			return slice;
+		}
+		ByteBuffer copy = ByteBuffer.allocate(length);
+		get(copy.array(), 0, length);
+		return PooledBuffer.wrap(copy);
+	}
+
+	public void skip(int length) {
+		checkAvailable(length);
+		while (length > 0) {
+			ByteBuffer buffer = buffers.peek().buffer();
+			int count = Math.min(length, buffer.remaining());
+			buffer.position(buffer.position() + count);
+			length -= count;
+			consumed(buffer, count);
+		}
+	}
+
+	public void clear() {
+		PooledBuffer pooled;
+		while ((pooled = buffers.poll()) != null) pooled.release();
+		available = 0;
+	}
+
+	private void consumed(ByteBuffer buffer, int count) {
+		available -= count;
+		if (!buffer.hasRemaining()) buffers.poll().release();
+	}
+
+	private void checkAvailable(int length) {
+		if (length < 0 || length > available) throw (new IndexOutOfBoundsException("length " + length + ", available " + available));
+	}
+}
@@ -0,0 +1,31 @@
+package jawaitasync.tools;
+
+// Next read size from the previous ones: grows fast when reads fill the buffer, shrinks after two small reads in a row.
+final class ReadSizePredictor {
+	static private final int MIN_SIZE = 512;
+	static private final int MAX_SIZE = 64 * 1024;
+	static private final int INITIAL_SIZE = 2048;
+
+	private int size = INITIAL_SIZE;
+	private boolean shrinkNext = false;
+
+	int next() {
+		return size;
+	}
+
+	void record(int bytesRead) {
+		if (bytesRead >= size) {
+			size = Math.min(MAX_SIZE, size * 4);
+			shrinkNext = false;
+		} else if (bytesRead <= size / 2 && size > MIN_SIZE) {
+			if (shrinkNext) {
+				size /= 2;
+				shrinkNext = false;
+			} else {
+				shrinkNext = true;
+			}
+		} else {
+			shrinkNext = false;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// Options for listening and accepted sockets. Buffer sizes are left to the OS when 0.
+public class SocketOptions {
+	static public final int DEFAULT_BACKLOG = 1024;
+	static public final int DEFAULT_CONNECT_TIMEOUT = 10_000;
+
+	// StandardSocketOptions.SO_REUSEPORT only exists since Java 9
+	static private final SocketOption<Boolean> SO_REUSEPORT = findReusePort();
+
+	private int backlog = DEFAULT_BACKLOG;
+	private boolean tcpNoDelay = false;
+	private int receiveBufferSize = 0;
+	private int sendBufferSize = 0;
+	private boolean reusePort = false;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public SocketOptions setBacklog(int backlog) {
+		this.backlog = backlog;
+		return this;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public SocketOptions setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public SocketOptions setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+		return this;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public SocketOptions setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+		return this;
+	}
+
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	// Lets several listeners bind the same port and the kernel spread connections between them.
+	// Ignored where SO_REUSEPORT isn't available.
+	public SocketOptions setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+		return this;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	// Milliseconds before AsyncSocket.connectAsync gives up, 0 waits as long as the OS does
+	public SocketOptions setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+		return this;
+	}
+
+	static public boolean isReusePortSupported() {
+		return SO_REUSEPORT != null;
+	}
+
+	boolean useReusePort(NetworkChannel channel) {
+		return reusePort && SO_REUSEPORT != null && channel.supportedOptions().contains(SO_REUSEPORT);
+	}
+
+	// Before bind. The receive buffer size is inherited by accepted sockets, large windows need it set here.
+	void applyTo(ServerSocketChannel channel) throws IOException {
+		set(channel, StandardSocketOptions.SO_REUSEADDR, true);
+		if (receiveBufferSize > 0) set(channel, StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		if (useReusePort(channel)) channel.setOption(SO_REUSEPORT, true);
+	}
+
+	void applyTo(DatagramChannel channel) throws IOException {
+		if (receiveBufferSize > 0) set(channel, StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		if (sendBufferSize > 0) set(channel, StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+		if (useReusePort(channel)) channel.setOption(SO_REUSEPORT, true);
+	}
+
+	void applyTo(SocketChannel channel) throws IOException {
+		if (tcpNoDelay) set(channel, StandardSocketOptions.TCP_NODELAY, true);
+		if (receiveBufferSize > 0) set(channel, StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		if (sendBufferSize > 0) set(channel, StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+	}
+
+	// Unix domain channels don't have the TCP options
+	static private <T> void set(NetworkChannel channel, SocketOption<T> option, T value) throws IOException {
+		if (channel.supportedOptions().contains(option)) channel.setOption(option, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	static private SocketOption<Boolean> findReusePort() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package jawaitasync.tools;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unix domain socket addresses (Java 16+), usable wherever AsyncSocketListener, AsyncSocketAcceptor and
+ * AsyncSocket.connectAsync take a SocketAddress. Looked up by reflection so the library still builds and runs on Java 8.
+ */
+public final class UnixDomainSockets {
+	static private final ProtocolFamily UNIX;
+	static private final Class<?> ADDRESS_CLASS;
+	static private final Method ADDRESS_OF;
+	static private final Method ADDRESS_PATH;
+	static private final Method OPEN_SERVER;
+	static private final Method OPEN_CLIENT;
+
+	static {
+		ProtocolFamily unix = null;
+		Class<?> addressClass = null;
+		Method addressOf = null, addressPath = null, openServer = null, openClient = null;
+		try {
+			addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+			addressOf = addressClass.getMethod("of", Path.class);
+			addressPath = addressClass.getMethod("getPath");
+			openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+			openClient = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			unix = StandardProtocolFamily.valueOf("UNIX");
+		} catch (Throwable e) {
+			unix = null;
+		}
+		UNIX = unix;
+		ADDRESS_CLASS = addressClass;
+		ADDRESS_OF = addressOf;
+		ADDRESS_PATH = addressPath;
+		OPEN_SERVER = openServer;
+		OPEN_CLIENT = openClient;
+	}
+
+	private UnixDomainSockets() {
+	}
+
+	static public boolean isSupported() {
+		return UNIX != null;
+	}
+
+	static public SocketAddress address(Path path) {
+		if (!isSupported()) throw (new UnsupportedOperationException("Unix domain sockets need Java 16 or later"));
+		try {
+			return (SocketAddress) invoke(ADDRESS_OF, null, path);
+		} catch (IOException e) {
+			throw (new IllegalStateException(e));
+		}
+	}
+
+	static public boolean isUnixAddress(SocketAddress address) {
+		return ADDRESS_CLASS != null && ADDRESS_CLASS.isInstance(address);
+	}
+
+	// Channels of the family of address, TCP/IP unless it is a unix domain address
+	static ServerSocketChannel openServer(SocketAddress address) throws IOException {
+		return isUnixAddress(address) ? (ServerSocketChannel) invoke(OPEN_SERVER, null, UNIX) : ServerSocketChannel.open();
+	}
+
+	static SocketChannel openClient(SocketAddress address) throws IOException {
+		return isUnixAddress(address) ? (SocketChannel) invoke(OPEN_CLIENT, null, UNIX) : SocketChannel.open();
+	}
+
+	// The socket file outlives the channel, listeners remove it when closed
+	static void deleteSocketFile(SocketAddress address) {
+		if (!isUnixAddress(address)) return;
+		try {
+			Files.deleteIfExists((Path) invoke(ADDRESS_PATH, address));
+		} catch (IOException e) {
+		}
+	}
+
+	static private Object invoke(Method method, Object target, Object... args) throws IOException {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw (new IllegalStateException(cause));
+		} catch (IllegalAccessException e) {
+			throw (new IllegalStateException(e));
+		}
+	}
+}
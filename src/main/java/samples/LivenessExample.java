@@ -0,0 +1,26 @@
+package samples;
+
+import jawaitasync.Promise;
+import jawaitasync.PromiseTools;
+
+import static jawaitasync.Promise.await;
+import static jawaitasync.Promise.complete;
+
+public class LivenessExample {
+	public Promise testAsync() {
+		long total = 0;
+		String label = "sum";
+		for (int n = 0; n < 3; n++) {
+			int square = 0;
+			for (int m = 0; m < 1000; m++) square += n;
+			total += square;
+			await(PromiseTools.sleepAsync(10));
+		}
+		try {
+			await(PromiseTools.sleepAndThrowAsync(10, new Exception("E")));
+		} catch (Exception e) {
+			System.out.print(label + ":" + total + ":" + e.getMessage());
+		}
+		return complete(null);
+	}
+}
@@ -0,0 +1,46 @@
+package samples;
+
+import jawaitasync.DoublePromise;
+import jawaitasync.IntPromise;
+import jawaitasync.LongPromise;
+import jawaitasync.Promise;
+import jawaitasync.PromiseTools;
+import jawaitasync.loop.EventLoopHolder;
+
+import static jawaitasync.Promise.await;
+import static jawaitasync.Promise.complete;
+
+public class PrimitiveAwaitExample {
+	public Promise testAsync() {
+		int count = await(countAsync(3));
+		long big = await(LongPromise.resolved(1L << 40));
+		double half = await(halfAsync(count));
+		System.out.print(count + ":" + big + ":" + half);
+		try {
+			await(failLaterAsync());
+		} catch (IllegalStateException e) {
+			System.out.print(":" + e.getMessage());
+		}
+		return complete(count);
+	}
+
+	public IntPromise countAsync(int to) {
+		int total = 0;
+		for (int n = 1; n <= to; n++) {
+			await(PromiseTools.sleepAsync(10));
+			total += n;
+		}
+		return complete(total);
+	}
+
+	public DoublePromise halfAsync(int value) {
+		await(PromiseTools.sleepAsync(10));
+		return complete(value / 2.0);
+	}
+
+	private IntPromise failLaterAsync() {
+		IntPromise promise = new IntPromise();
+		EventLoopHolder.current().setTimeout(() -> promise.reject(new IllegalStateException("failed")), 10);
+		return promise;
+	}
+}
@@ -0,0 +1,21 @@
+package samples;
+
+import jawaitasync.Promise;
+
+import static jawaitasync.Promise.await;
+import static jawaitasync.Promise.complete;
+
+public class SyncAwaitExample {
+	public Promise testAsync() {
+		Promise<String> inner = innerAsync();
+		System.out.print("[after]");
+		System.out.print("[result:" + await(inner) + "]");
+		return complete(null);
+	}
+
+	public Promise<String> innerAsync() {
+		String value = await(Promise.resolved("a"));
+		System.out.print("[inner:" + value + "]");
+		return complete(value);
+	}
+}
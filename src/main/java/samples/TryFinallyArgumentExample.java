@@ -0,0 +1,25 @@
+package samples;
+
+import jawaitasync.Promise;
+import jawaitasync.PromiseTools;
+
+import static jawaitasync.Promise.await;
+import static jawaitasync.Promise.complete;
+
+public class TryFinallyArgumentExample {
+	public Promise testAsync() {
+		await(runAsync("name"));
+		return complete(null);
+	}
+
+	// The try starts at the first instruction and its handler reads the argument
+	public Promise runAsync(String name) {
+		try {
+			await(PromiseTools.sleepAsync(10));
+			System.out.print("body:" + name);
+		} finally {
+			System.out.print(":finally:" + name);
+		}
+		return complete(null);
+	}
+}
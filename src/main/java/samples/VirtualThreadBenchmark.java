@@ -0,0 +1,92 @@
+package samples;
+
+import jawaitasync.Promise;
+import jawaitasync.PromiseTools;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.VirtualThreads;
+import jawaitasync.processor.AwaitProcessorClassLoader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import static jawaitasync.Promise.await;
+import static jawaitasync.Promise.complete;
+
+// Compares handlers rewritten into state machines by the AwaitProcessor with the same handlers
+// written as plain blocking code on virtual threads (platform threads when the JVM has none).
+// Each handler waits WAIT_MILLIS STEPS times, simulating I/O, and does a bit of work in between.
+public class VirtualThreadBenchmark {
+	static private final int HANDLERS = 10000;
+	static private final int STEPS = 10;
+	static private final int WAIT_MILLIS = 1;
+	static private final int ROUNDS = 5;
+
+	static private volatile long sink;
+
+	public static void main(String[] args) throws Exception {
+		ClassLoader loader = new AwaitProcessorClassLoader(ClassLoader.getSystemClassLoader());
+		Class clazz = loader.loadClass(VirtualThreadBenchmark.class.getName());
+		clazz.getMethod("run").invoke(clazz.getDeclaredConstructor().newInstance());
+	}
+
+	public void run() throws Exception {
+		System.out.println(HANDLERS + " handlers x " + STEPS + " waits of " + WAIT_MILLIS + "ms, virtual threads: " + VirtualThreads.isSupported());
+		for (int round = 0; round < ROUNDS; round++) {
+			long asyncTime = timeAsync();
+			long blockingTime = timeBlocking();
+			System.out.println("round " + round + ": state machine " + (asyncTime / 1000000) + "ms, blocking threads " + (blockingTime / 1000000) + "ms");
+		}
+	}
+
+	private long timeAsync() throws Exception {
+		long start = System.nanoTime();
+		for (int n = 0; n < HANDLERS; n++) handleAsync(n);
+		EventLoopHolder.instance.loop();
+		return System.nanoTime() - start;
+	}
+
+	private long timeBlocking() throws Exception {
+		ExecutorService executor = VirtualThreads.newPerTaskExecutor("benchmark");
+		CountDownLatch done = new CountDownLatch(HANDLERS);
+		long start = System.nanoTime();
+		for (int n = 0; n < HANDLERS; n++) {
+			final int seed = n;
+			executor.execute(() -> {
+				try {
+					handleBlocking(seed);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		done.await();
+		long time = System.nanoTime() - start;
+		executor.shutdown();
+		return time;
+	}
+
+	public Promise<Long> handleAsync(int seed) {
+		long total = seed;
+		for (int step = 0; step < STEPS; step++) {
+			await(PromiseTools.sleepAsync(WAIT_MILLIS));
+			total = work(total);
+		}
+		sink = total;
+		return complete(total);
+	}
+
+	private void handleBlocking(int seed) throws InterruptedException {
+		long total = seed;
+		for (int step = 0; step < STEPS; step++) {
+			Thread.sleep(WAIT_MILLIS);
+			total = work(total);
+		}
+		sink = total;
+	}
+
+	static private long work(long value) {
+		for (int n = 0; n < 100; n++) value = value * 6364136223846793005L + 1442695040888963407L;
+		return value;
+	}
+}
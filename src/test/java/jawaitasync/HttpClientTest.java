@@ -0,0 +1,270 @@
+package jawaitasync;
+
+import com.sun.net.httpserver.HttpServer;
+import jawaitasync.loop.EventLoopGroup;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.NormalEventLoop;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpClientTest {
+	private HttpServer server;
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+
+	@org.junit.Before
+	public void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newFixedThreadPool(16));
+		server.createContext("/", (exchange) -> {
+			int current = concurrent.incrementAndGet();
+			maxConcurrent.accumulateAndGet(current, Math::max);
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+			}
+			byte[] body = exchange.getRequestURI().getPath().getBytes("UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+			concurrent.decrementAndGet();
+		});
+		server.createContext("/big", (exchange) -> {
+			// Chunked, without Content-Length
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				byte[] block = new byte[8192];
+				for (int n = 0; n < BIG_SIZE / block.length; n++) {
+					for (int m = 0; m < block.length; m++) block[m] = (byte) (n + m);
+					os.write(block);
+				}
+			}
+		});
+		server.createContext("/missing", (exchange) -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	static private final int BIG_SIZE = 4 * 1024 * 1024;
+
+	static private byte expectedByte(int offset) {
+		return (byte) (offset / 8192 + offset % 8192);
+	}
+
+	@org.junit.After
+	public void stopServer() {
+		server.stop(0);
+		((ExecutorService) server.getExecutor()).shutdown();
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	@org.junit.Test
+	public void testLimitsInFlightAndReusesConnections() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		HttpClient client = new HttpClient(4, 4, 5000, 5000);
+		int requests = 60;
+		Set<String> bodies = new HashSet<>();
+		try {
+			for (int n = 0; n < requests; n++) {
+				client.getStringAsync(url("/" + n)).then((body) -> bodies.add(body));
+			}
+			EventLoopHolder.instance.loop();
+		} finally {
+			client.close();
+		}
+
+		Assert.assertEquals(requests, bodies.size());
+		Assert.assertTrue(bodies.contains("/59"));
+		Assert.assertTrue("max concurrent " + maxConcurrent.get(), maxConcurrent.get() <= 4);
+		Assert.assertTrue("connections " + clientPorts.size(), clientPorts.size() < requests);
+		Assert.assertEquals(0, client.getInFlight());
+	}
+
+	@org.junit.Test
+	public void testConnectionErrorRejects() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		HttpClient client = new HttpClient(4, 4, 5000, 5000);
+		Object[] result = new Object[1];
+		try {
+			Promise<?> promise = client.getStringAsync("http://127.0.0.1:1/");
+			((Promise<Object>) promise).then((value) -> result[0] = value);
+			EventLoopHolder.instance.loop();
+		} finally {
+			client.close();
+		}
+		Assert.assertTrue(result[0] instanceof Exception);
+	}
+
+	@org.junit.Test
+	public void testCloseRejectsQueuedRequestsAndReleasesTheLoop() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop();
+		EventLoopHolder.instance = loop;
+		HttpClient client = new HttpClient(1, 1, 5000, 5000);
+		Object[] results = new Object[3];
+		try {
+			Promise<?> first = client.getStringAsync(url("/first"));
+			((Promise<Object>) first).then((value) -> results[0] = value);
+			Promise<?> queued = client.getStringAsync(url("/queued"));
+			((Promise<Object>) queued).then((value) -> results[1] = value);
+			client.close();
+			Promise<?> late = client.getStringAsync(url("/late"));
+			((Promise<Object>) late).then((value) -> results[2] = value);
+			loop.loop();
+		} finally {
+			client.close();
+		}
+		Assert.assertTrue(results[0] instanceof Exception);
+		Assert.assertTrue(results[1] instanceof ClosedChannelException);
+		Assert.assertTrue(results[2] instanceof ClosedChannelException);
+	}
+
+	@org.junit.Test
+	public void testGroupLoopsShareTheGroupClient() throws Exception {
+		EventLoopGroup group = new EventLoopGroup(2);
+		HttpClient[] clients = new HttpClient[2];
+		String[] body = new String[1];
+		CountDownLatch done = new CountDownLatch(2);
+		for (int n = 0; n < 2; n++) {
+			final int index = n;
+			group.get(n).enqueue(() -> {
+				clients[index] = HttpClient.current();
+				HttpClient.current().getStringAsync(url("/group")).then((value) -> {
+					body[0] = value;
+					done.countDown();
+				});
+			});
+		}
+		done.await();
+		group.shutdown();
+		group.awaitTermination();
+
+		Assert.assertSame(group.getHttpClient(), clients[0]);
+		Assert.assertSame(clients[0], clients[1]);
+		Assert.assertEquals("/group", body[0]);
+	}
+
+	@org.junit.Test
+	public void testBytesAndErrorStatus() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		HttpClient client = new HttpClient(4, 4, 5000, 5000);
+		Object[] results = new Object[3];
+		try {
+			client.getBytesAsync(url("/abc")).then((bytes) -> results[0] = new String(bytes));
+			client.getBytesAsync(url("/big")).then((bytes) -> results[1] = bytes);
+			Promise<?> missing = client.getBytesAsync(url("/missing"));
+			((Promise<Object>) missing).then((value) -> results[2] = value);
+			EventLoopHolder.instance.loop();
+		} finally {
+			client.close();
+		}
+		Assert.assertEquals("/abc", results[0]);
+		byte[] big = (byte[]) results[1];
+		Assert.assertEquals(BIG_SIZE, big.length);
+		Assert.assertEquals(expectedByte(BIG_SIZE - 1), big[BIG_SIZE - 1]);
+		Assert.assertTrue(results[2] instanceof IOException);
+	}
+
+	@org.junit.Test
+	public void testDownloadToFile() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		HttpClient.setShared(new HttpClient(4, 4, 5000, 5000));
+		Path path = Files.createTempFile("download", ".bin");
+		Object[] length = new Object[1];
+		byte[] data;
+		try {
+			PromiseTools.downloadUrlToFileAsync(url("/big"), path).then((value) -> length[0] = value);
+			EventLoopHolder.instance.loop();
+			data = Files.readAllBytes(path);
+		} finally {
+			HttpClient.shared().close();
+			HttpClient.setShared(null);
+			Files.delete(path);
+		}
+		Assert.assertEquals((long) BIG_SIZE, length[0]);
+		Assert.assertEquals(BIG_SIZE, data.length);
+		Assert.assertEquals(expectedByte(123456), data[123456]);
+	}
+
+	@org.junit.Test
+	public void testStreamIsReadChunkByChunk() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		HttpClient client = new HttpClient(4, 4, 5000, 5000);
+		long[] total = new long[1];
+		boolean[] mismatch = new boolean[1];
+		boolean[] ended = new boolean[1];
+		try {
+			HttpBodyStream stream = client.openStream(url("/big"));
+			readAll(stream, total, mismatch, ended);
+			EventLoopHolder.instance.loop();
+		} finally {
+			client.close();
+		}
+		Assert.assertTrue(ended[0]);
+		Assert.assertFalse(mismatch[0]);
+		Assert.assertEquals(BIG_SIZE, total[0]);
+	}
+
+	private void readAll(HttpBodyStream stream, long[] total, boolean[] mismatch, boolean[] ended) {
+		stream.readAsync().then((chunk) -> {
+			if (chunk == null) {
+				ended[0] = true;
+				return;
+			}
+			while (chunk.hasRemaining()) {
+				if (chunk.get() != expectedByte((int) total[0]++)) mismatch[0] = true;
+			}
+			readAll(stream, total, mismatch, ended);
+		});
+	}
+
+	@org.junit.Test
+	public void testUnreadStreamPausesWithoutBlockingOtherRequests() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop();
+		EventLoopHolder.instance = loop;
+		HttpClient client = new HttpClient(4, 4, 5000, 5000);
+		long[] total = new long[1];
+		boolean[] mismatch = new boolean[1];
+		boolean[] ended = new boolean[1];
+		boolean[] paused = new boolean[1];
+		String[] other = new String[1];
+		try {
+			HttpBodyStream stream = client.openStream(url("/big"));
+			loop.setTimeout(() -> {
+				paused[0] = stream.isPaused();
+				client.getStringAsync(url("/other")).then((body) -> {
+					other[0] = body;
+					readAll(stream, total, mismatch, ended);
+				});
+			}, 300);
+			loop.loop();
+		} finally {
+			client.close();
+		}
+		Assert.assertTrue(paused[0]);
+		Assert.assertEquals("/other", other[0]);
+		Assert.assertTrue(ended[0]);
+		Assert.assertFalse(mismatch[0]);
+		Assert.assertEquals(BIG_SIZE, total[0]);
+	}
+}
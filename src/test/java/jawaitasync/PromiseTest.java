@@ -0,0 +1,107 @@
+package jawaitasync;
+
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.NormalEventLoop;
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PromiseTest {
+	@org.junit.Test
+	public void testCallbacksRunInRegistrationOrder() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		Promise<String> promise = new Promise<>();
+		promise.then((value) -> out.append("1" + value));
+		promise.then((value) -> out.append("2" + value));
+		promise.resolve("a");
+		promise.resolve("b");
+		promise.then((value) -> out.append("3" + value));
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("1a2a3a", out.toString());
+	}
+
+	@org.junit.Test
+	public void testPrimitivePromise() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		IntPromise promise = new IntPromise();
+		promise.then((value) -> out.append("then:" + value));
+		promise.thenResume((value) -> out.append(",resume:" + value + ":" + promise.getResolvedInt()));
+		promise.resolve(7);
+		promise.resolve(8);
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("then:7,resume:null:7", out.toString());
+		Assert.assertEquals(7, promise.getResolvedValue());
+	}
+
+	@org.junit.Test
+	public void testPrimitivePromisesAcceptNull() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		IntPromise ints = new IntPromise();
+		LongPromise longs = new LongPromise();
+		DoublePromise doubles = new DoublePromise();
+		for (Promise<?> promise : new Promise<?>[] { ints, longs, doubles }) {
+			((Promise<Object>) promise).then((value) -> out.append("[" + value + "]"));
+			((Promise<Object>) promise).resolve(null);
+		}
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("[null][null][null]", out.toString());
+		Assert.assertTrue(ints.isResolved());
+		Assert.assertNull(ints.getResolvedValue());
+		Assert.assertEquals(0, ints.getResolvedInt());
+		Assert.assertEquals(0L, longs.getResolvedLong());
+		Assert.assertEquals(0.0, doubles.getResolvedDouble(), 0.0);
+	}
+
+	@org.junit.Test
+	public void testThenWhilePrimitiveCompletingDoesNotWait() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		IntPromise promise = new IntPromise();
+		promise.then((value) -> out.append("early:" + value));
+		Object waiters = promise.claim();
+		promise.then((value) -> out.append(",late:" + value));
+		Assert.assertFalse(promise.isResolved());
+		promise.publish(waiters);
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("early:0,late:0", out.toString());
+	}
+
+	@org.junit.Test
+	public void testConcurrentThenAndResolve() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		final int threadCount = 8;
+		final int callbacksPerThread = 10000;
+		AtomicInteger called = new AtomicInteger();
+		AtomicInteger resolvedWins = new AtomicInteger();
+		Promise<Integer> promise = new Promise<>();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int n = 0; n < threadCount; n++) {
+			final int value = n;
+			threads.add(new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int m = 0; m < callbacksPerThread; m++) {
+					promise.then((result) -> called.incrementAndGet());
+					if (m == callbacksPerThread / 2) promise.resolve(value);
+				}
+			}));
+		}
+		promise.then((result) -> resolvedWins.incrementAndGet());
+		for (Thread thread : threads) thread.start();
+		start.countDown();
+		for (Thread thread : threads) thread.join();
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals(threadCount * callbacksPerThread, called.get());
+		Assert.assertEquals(1, resolvedWins.get());
+	}
+}
@@ -1,7 +1,13 @@
 package jawaitasync;
 
+import jawaitasync.processor.AwaitProcessorClassLoader;
+import org.junit.Assert;
 import samples.*;
 
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+
 public class SimpleTest {
 	@org.junit.Test
 	public void testSimple() throws Exception {
@@ -102,6 +108,37 @@ public class SimpleTest {
 		TestAsyncClass.assertCallAsyncMethod("107", Test3Example.class.getTypeName(), "testAsync", false);
 	}
 
+	@org.junit.Test
+	public void testSyncAwait() throws Exception {
+		TestAsyncClass.assertCallAsyncMethod("[inner:a][after][result:a]", SyncAwaitExample.class.getTypeName(), "testAsync", false);
+	}
+
+	@org.junit.Test
+	public void testTryFinallyAtMethodStartReadingArgument() throws Exception {
+		TestAsyncClass.assertCallAsyncMethod("[0:10]body:name:finally:name", TryFinallyArgumentExample.class.getTypeName(), "testAsync", false);
+	}
+
+	@org.junit.Test
+	public void testLiveness() throws Exception {
+		TestAsyncClass.assertCallAsyncMethod("[0:10][10:10][20:10][30:10]sum:3000:E", LivenessExample.class.getTypeName(), "testAsync", false);
+
+		// Locals not alive across an await stay in JVM locals
+		ClassLoader loader = new AwaitProcessorClassLoader(ClassLoader.getSystemClassLoader());
+		loader.loadClass(LivenessExample.class.getTypeName());
+		Set<String> fields = new HashSet<>();
+		for (Field field : loader.loadClass(LivenessExample.class.getTypeName() + "$testAsync$Runnable").getDeclaredFields()) fields.add(field.getName());
+		Assert.assertTrue(fields.contains("local_total"));
+		Assert.assertTrue(fields.contains("local_label"));
+		Assert.assertTrue(fields.contains("local_n"));
+		Assert.assertFalse(fields.contains("local_m"));
+		Assert.assertFalse(fields.contains("local_square"));
+	}
+
+	@org.junit.Test
+	public void testPrimitiveAwait() throws Exception {
+		TestAsyncClass.assertCallAsyncMethod("[0:10][10:10][20:10][30:10]6:1099511627776:3.0[40:10]:failed", PrimitiveAwaitExample.class.getTypeName(), "testAsync", false);
+	}
+
 	@org.junit.Test
 	public void testSeveralArguments() throws Exception {
 		TestAsyncClass.assertCallNoOutputAsync(SeveralArguments.class.getTypeName(), "testAsync", true);
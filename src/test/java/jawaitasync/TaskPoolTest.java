@@ -0,0 +1,103 @@
+package jawaitasync;
+
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.NormalEventLoop;
+import org.junit.Assert;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+public class TaskPoolTest {
+	@org.junit.Test
+	public void testResultsComeBackOnTheCallingLoop() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		TaskPool pool = new TaskPool("test", 2, 100, TaskPool.RejectionPolicy.REJECT);
+		Thread[] threads = new Thread[3];
+		StringBuilder out = new StringBuilder();
+		EventLoopHolder.instance.enqueue(() -> {
+			threads[0] = Thread.currentThread();
+			pool.runAsync(() -> {
+				threads[1] = Thread.currentThread();
+				return 42;
+			}).then((value) -> {
+				threads[2] = Thread.currentThread();
+				out.append(value);
+			});
+			pool.runAsync(() -> {
+				throw (new IllegalStateException("failed"));
+			}).then((value) -> out.append(":" + ((Exception) value).getMessage()));
+		});
+		EventLoopHolder.instance.loop();
+		pool.shutdown();
+
+		Assert.assertTrue(out.toString().equals("42:failed") || out.toString().equals(":failed42"));
+		Assert.assertNotSame(threads[0], threads[1]);
+		Assert.assertSame(threads[0], threads[2]);
+	}
+
+	@org.junit.Test
+	public void testFullQueueRejects() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		TaskPool pool = new TaskPool("test", 1, 1, TaskPool.RejectionPolicy.REJECT);
+		CountDownLatch release = new CountDownLatch(1);
+		StringBuilder out = new StringBuilder();
+		EventLoopHolder.instance.enqueue(() -> {
+			for (int n = 0; n < 3; n++) {
+				final int index = n;
+				Promise<Object> promise = pool.runAsync(() -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+					return index;
+				});
+				promise.then((value) -> {
+					out.append((value instanceof RejectedExecutionException) ? "rejected" : "[" + value + "]");
+					release.countDown();
+				});
+			}
+		});
+		EventLoopHolder.instance.loop();
+		pool.shutdown();
+
+		Assert.assertEquals("rejected[0][1]", out.toString());
+	}
+
+	@org.junit.Test
+	public void testRunAfterShutdownRejects() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		Object[] results = new Object[2];
+		for (TaskPool.RejectionPolicy policy : TaskPool.RejectionPolicy.values()) {
+			TaskPool pool = new TaskPool("test", 1, 1, policy);
+			pool.shutdown();
+			EventLoopHolder.instance.enqueue(() -> {
+				Promise<Object> promise = pool.runAsync(() -> "ran");
+				promise.then((value) -> results[policy.ordinal()] = value);
+			});
+		}
+		EventLoopHolder.instance.loop();
+
+		Assert.assertTrue(results[0] instanceof RejectedExecutionException);
+		Assert.assertTrue(results[1] instanceof RejectedExecutionException);
+	}
+
+	@org.junit.Test
+	public void testVirtualPoolRunsBlockingTasks() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		EventLoopHolder.instance.enqueue(() -> {
+			for (int n = 0; n < 100; n++) {
+				final int index = n;
+				PromiseTools.runVirtualTaskAsync(() -> {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+					}
+					return index;
+				}).then((value) -> out.append("."));
+			}
+		});
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals(100, out.length());
+	}
+}
@@ -0,0 +1,106 @@
+package jawaitasync.http;
+
+import jawaitasync.tools.ReadQueue;
+import org.junit.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpRequestDecoderTest {
+	static private final String REQUESTS =
+		"\r\nGET /index.html?q=1 HTTP/1.1\r\nhost: example.com\r\nX-Custom:  spaced value \t\r\nConnection: Upgrade, Keep-Alive\r\n\r\n" +
+		"POST /upload HTTP/1.0\r\nContent-Length: 3\r\nContent-Type: text/plain\r\n\r\nabc" +
+		"PUT /chunked HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n4;name=value\r\nwiki\r\n0\r\nExpires: never\r\n\r\n";
+
+	private List<HttpRequest> decodeAll(byte[] bytes, int split) throws Exception {
+		HttpRequestDecoder decoder = new HttpRequestDecoder();
+		ReadQueue queue = new ReadQueue();
+		List<HttpRequest> requests = new ArrayList<>();
+		for (int[] part : new int[][] { { 0, split }, { split, bytes.length } }) {
+			queue.add(ByteBuffer.wrap(bytes, part[0], part[1] - part[0]));
+			HttpRequest request;
+			while ((request = decoder.decode(queue)) != null) requests.add(request);
+		}
+		Assert.assertEquals(0, queue.available());
+		return requests;
+	}
+
+	@org.junit.Test
+	public void testRequestsSplitAnywhere() throws Exception {
+		byte[] bytes = REQUESTS.getBytes(StandardCharsets.ISO_8859_1);
+		for (int split = 0; split <= bytes.length; split++) {
+			List<HttpRequest> requests = decodeAll(bytes, split);
+			Assert.assertEquals(3, requests.size());
+
+			HttpRequest get = requests.get(0);
+			Assert.assertSame("GET", get.getMethod());
+			Assert.assertEquals("/index.html", get.getPath());
+			Assert.assertSame("HTTP/1.1", get.getVersion());
+			Assert.assertEquals("example.com", get.getHeader("HOST"));
+			Assert.assertEquals("spaced value", get.getHeader("x-custom"));
+			Assert.assertTrue(get.getHeaders().containsToken("Connection", "keep-alive"));
+			Assert.assertTrue(get.isKeepAlive());
+
+			HttpRequest post = requests.get(1);
+			Assert.assertEquals("abc", new String(post.getBody(), StandardCharsets.ISO_8859_1));
+			Assert.assertEquals("text/plain", post.getHeader("content-type"));
+			Assert.assertFalse(post.isKeepAlive());
+
+			HttpRequest put = requests.get(2);
+			Assert.assertEquals("wiki", new String(put.getBody(), StandardCharsets.ISO_8859_1));
+			Assert.assertEquals("never", put.getHeader("Expires"));
+		}
+	}
+
+	@org.junit.Test
+	public void testWellKnownNamesAreInterned() throws Exception {
+		List<HttpRequest> requests = decodeAll(REQUESTS.getBytes(StandardCharsets.ISO_8859_1), 0);
+		HttpHeaders headers = requests.get(0).getHeaders();
+		Assert.assertSame(HttpHeaderNames.HOST, headers.getName(0));
+		Assert.assertEquals("X-Custom", headers.getName(1));
+		Assert.assertSame(HttpHeaderNames.CONNECTION, headers.getName(2));
+		Assert.assertEquals(2, headers.indexOf("connection"));
+		Assert.assertEquals(-1, headers.indexOf(HttpHeaderNames.COOKIE));
+	}
+
+	@org.junit.Test
+	public void testMalformedHeads() throws Exception {
+		String[] heads = {
+			"GET / HTTP/1.1\r\nHost : a\r\n\r\n",
+			"GET / HTTP/1.1\r\nHost: a\r\n folded\r\n\r\n",
+			"GET / HTTP/1.1\r\nHo\"st: a\r\n\r\n",
+			"GET /\r\n\r\n",
+			"GET / HTTP/2.0\r\n\r\n",
+			"POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n",
+			"POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 4\r\n\r\nabcd",
+			"POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nContent-Length: 3\r\n\r\nabc",
+			"POST / HTTP/1.1\r\nTransfer-Encoding: chunked, gzip\r\n\r\n",
+			"POST / HTTP/1.1\r\nTransfer-Encoding: identity\r\nContent-Length: 3\r\n\r\nabc",
+			"POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n",
+			"POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabcXY0\r\n\r\n",
+		};
+		for (String head : heads) {
+			ReadQueue queue = new ReadQueue();
+			queue.add(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)));
+			try {
+				new HttpRequestDecoder().decode(queue);
+				Assert.fail(head);
+			} catch (HttpException e) {
+				Assert.assertEquals(400, e.getStatus());
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testHeadersEditing() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("Content-Type", "a").add("X-One", "1").add("content-type", "b").set("X-One", "2");
+		Assert.assertEquals("a", headers.get("CONTENT-TYPE"));
+		headers.remove("Content-Type");
+		Assert.assertEquals(1, headers.size());
+		Assert.assertEquals("2", headers.get("x-one"));
+		Assert.assertNull(headers.get("Content-Type"));
+	}
+}
@@ -0,0 +1,153 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import jawaitasync.tools.AsyncSocket;
+import jawaitasync.tools.AsyncSocketListener;
+import org.junit.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class HttpResponseWriterTest {
+	interface Writes {
+		Promise<?> write(HttpResponseWriter writer) throws Exception;
+	}
+
+	// Accepts one connection, writes through writes and closes the socket once its promise resolves.
+	// Returns everything the client read.
+	private String written(Writes writes) throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		String[] result = new String[1];
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			((Promise<Object>) (Promise<?>) listener.acceptAsync()).then((accepted) -> {
+				AsyncSocket socket = (AsyncSocket) accepted;
+				try {
+					listener.close();
+					writes.write(new HttpResponseWriter(socket)).then(() -> {
+						try {
+							socket.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					});
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			loop.refCountInc();
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+					InputStream is = socket.getInputStream();
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] chunk = new byte[4096];
+					int len;
+					while ((len = is.read(chunk)) > 0) out.write(chunk, 0, len);
+					result[0] = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				loop.refCountDec();
+			}).start();
+		});
+		loop.loop();
+		return result[0];
+	}
+
+	static private String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	@org.junit.Test
+	public void testHeadIsEncodedFromCachedBytes() throws Exception {
+		String response = written((writer) -> {
+			HttpResponse response1 = new HttpResponse(404)
+				.setHeader(HttpHeaderNames.CONTENT_TYPE, "text/plain")
+				.setHeader("X-Custom", "\u00e9t\u00e9\u2603")
+				.setHeader(HttpHeaderNames.CONTENT_LENGTH, "999")
+				.setBody("missing");
+			writer.write(response1, false, true, false);
+			writer.write(new HttpResponse(299).setReason("Custom").setBody(repeat('b', 2000)), true, true, false);
+			writer.write(new HttpResponse().setBody("skipped"), false, false, true);
+			return Promise.resolved(null);
+		});
+		Assert.assertEquals(
+			"HTTP/1.1 404 Not Found\r\nContent-Type: text/plain\r\nX-Custom: \u00e9t\u00e9?\r\nContent-Length: 7\r\n\r\nmissing" +
+			"HTTP/1.0 299 Custom\r\nContent-Length: 2000\r\nConnection: keep-alive\r\n\r\n" + repeat('b', 2000) +
+			"HTTP/1.1 200 OK\r\nContent-Length: 7\r\nConnection: close\r\n\r\n",
+			response
+		);
+	}
+
+	@org.junit.Test
+	public void testBodilessStatusesHaveNoFraming() throws Exception {
+		String response = written((writer) -> {
+			writer.write(new HttpResponse(100), false, true, false);
+			writer.write(new HttpResponse(204).setBody("dropped"), false, true, false);
+			writer.write(new HttpResponse(304).setBodyWriter((output) -> Promise.resolved(null)), false, true, false);
+			return Promise.resolved(null);
+		});
+		Assert.assertEquals("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 204 No Content\r\n\r\nHTTP/1.1 304 Not Modified\r\n\r\n", response);
+	}
+
+	@org.junit.Test
+	public void testHeadersCantSplitTheResponse() {
+		HttpResponse response = new HttpResponse();
+		for (String[] header : new String[][] { { "X-Bad", "a\r\nSet-Cookie: b" }, { "X-Bad", "a\nb" }, { "X Bad", "a" }, { "X-Bad:", "a" }, { "", "a" } }) {
+			try {
+				response.setHeader(header[0], header[1]);
+				Assert.fail(header[0] + ": " + header[1]);
+			} catch (IllegalArgumentException e) {
+			}
+			try {
+				response.getHeaders().add(header[0], header[1]);
+				Assert.fail(header[0] + ": " + header[1]);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		try {
+			response.setReason("OK\r\nX-Bad: a");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+		Assert.assertEquals(0, response.getHeaders().size());
+	}
+
+	@org.junit.Test
+	public void testStreamedBodyIsChunked() throws Exception {
+		String response = written((writer) -> {
+			HttpChunkedOutput output = writer.writeStreamed(new HttpResponse(), false, true);
+			output.writeAsync("hello");
+			output.writeAsync(new byte[0]);
+			Promise<?> last = output.writeAsync(repeat('x', 2000));
+			output.end();
+			Assert.assertTrue(output.writeAsync("late").getResolvedValue() instanceof IllegalStateException);
+			return last;
+		});
+		Assert.assertEquals(
+			"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n7d0\r\n" + repeat('x', 2000) + "\r\n0\r\n\r\n",
+			response
+		);
+	}
+
+	@org.junit.Test
+	public void testStreamedBodyForHttp10EndsWithTheConnection() throws Exception {
+		String response = written((writer) -> {
+			HttpChunkedOutput output = writer.writeStreamed(new HttpResponse(), true, true);
+			output.writeAsync("hello ");
+			Promise<?> last = output.writeAsync("world");
+			output.end();
+			return last;
+		});
+		Assert.assertEquals("HTTP/1.0 200 OK\r\nConnection: close\r\n\r\nhello world", response);
+	}
+}
@@ -0,0 +1,195 @@
+package jawaitasync.http;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpServerTest {
+	// Echoes method, path and body. /slow answers after the requests that follow it would.
+	static private Promise<HttpResponse> handle(HttpRequest request) {
+		String content = request.getMethod() + " " + request.getPath() + " " + new String(request.getBody(), StandardCharsets.UTF_8);
+		HttpResponse response = new HttpResponse().setHeader("Content-Type", "text/plain").setBody(content);
+		if (!request.getPath().equals("/slow")) return Promise.resolved(response);
+		Promise<HttpResponse> promise = new Promise<>();
+		EventLoopHolder.current().setTimeout(() -> promise.resolve(response), 100);
+		return promise;
+	}
+
+	// Runs the server on the test thread, sends raw bytes from another and returns everything read until the server closes
+	private String exchange(HttpServer server, String requests) throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		String[] result = new String[1];
+		server.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			loop.refCountInc();
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+					socket.getOutputStream().write(requests.getBytes(StandardCharsets.ISO_8859_1));
+					InputStream is = socket.getInputStream();
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] chunk = new byte[4096];
+					int len;
+					while ((len = is.read(chunk)) > 0) out.write(chunk, 0, len);
+					result[0] = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				loop.enqueue(() -> {
+					try {
+						server.close();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					loop.refCountDec();
+				});
+			}).start();
+		});
+		loop.loop();
+		return result[0];
+	}
+
+	static private int count(String value, String part) {
+		int count = 0;
+		for (int index = value.indexOf(part); index >= 0; index = value.indexOf(part, index + 1)) count++;
+		return count;
+	}
+
+	@org.junit.Test
+	public void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+		String response = exchange(new HttpServer(HttpServerTest::handle),
+			"GET /slow HTTP/1.1\r\nHost: a\r\n\r\n" +
+			"POST /fixed HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello" +
+			"POST /chunked?x=1 HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2;ext\r\nde\r\n0\r\nTrailer: t\r\n\r\n" +
+			"GET /last HTTP/1.1\r\nConnection: close\r\n\r\n"
+		);
+		Assert.assertEquals(4, count(response, "HTTP/1.1 200 OK\r\n"));
+		int slow = response.indexOf("GET /slow ");
+		int fixed = response.indexOf("POST /fixed hello");
+		int chunked = response.indexOf("POST /chunked abcde");
+		int last = response.indexOf("GET /last ");
+		Assert.assertTrue(response, 0 < slow && slow < fixed && fixed < chunked && chunked < last);
+		Assert.assertEquals(1, count(response, "Connection: close\r\n"));
+	}
+
+	@org.junit.Test
+	public void testRequestsWaitWhileTheClientDoesNotRead() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		int requests = 100;
+		byte[] body = new byte[512 * 1024];
+		AtomicInteger handled = new AtomicInteger();
+		int[] handledBeforeReading = new int[1];
+		int[] responses = new int[1];
+		HttpServer server = new HttpServer((request) -> {
+			handled.incrementAndGet();
+			return Promise.resolved(new HttpResponse().setBody(body));
+		});
+		server.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			loop.refCountInc();
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+					StringBuilder pipelined = new StringBuilder();
+					for (int n = 0; n < requests; n++) pipelined.append("GET /").append(n).append(" HTTP/1.1\r\n\r\n");
+					pipelined.append("GET /last HTTP/1.1\r\nConnection: close\r\n\r\n");
+					socket.getOutputStream().write(pipelined.toString().getBytes(StandardCharsets.ISO_8859_1));
+					Thread.sleep(300);
+					handledBeforeReading[0] = handled.get();
+					InputStream is = socket.getInputStream();
+					byte[] chunk = new byte[64 * 1024];
+					byte[] marker = "HTTP/1.1 200".getBytes(StandardCharsets.ISO_8859_1);
+					int matched = 0;
+					int len;
+					while ((len = is.read(chunk)) > 0) {
+						for (int n = 0; n < len; n++) {
+							matched = (chunk[n] == marker[matched]) ? matched + 1 : ((chunk[n] == marker[0]) ? 1 : 0);
+							if (matched == marker.length) {
+								responses[0]++;
+								matched = 0;
+							}
+						}
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				loop.enqueue(() -> {
+					try {
+						server.close();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					loop.refCountDec();
+				});
+			}).start();
+		});
+		loop.loop();
+		Assert.assertTrue("handled " + handledBeforeReading[0], handledBeforeReading[0] < requests);
+		Assert.assertEquals(requests + 1, responses[0]);
+		Assert.assertEquals(requests + 1, handled.get());
+	}
+
+	@org.junit.Test
+	public void testHttp10ClosesAfterResponse() throws Exception {
+		String response = exchange(new HttpServer(HttpServerTest::handle), "GET /a HTTP/1.0\r\n\r\nGET /b HTTP/1.0\r\n\r\n");
+		Assert.assertTrue(response, response.startsWith("HTTP/1.0 200 OK\r\n"));
+		Assert.assertEquals(1, count(response, "HTTP/1.0 200"));
+		Assert.assertTrue(response.endsWith("GET /a "));
+	}
+
+	@org.junit.Test
+	public void testIdleConnectionsAreClosed() throws Exception {
+		long start = System.nanoTime();
+		String response = exchange(new HttpServer(HttpServerTest::handle).setIdleTimeout(100), "GET /a HTTP/1.1\r\n\r\n");
+		Assert.assertEquals(1, count(response, "HTTP/1.1 200 OK\r\n"));
+		Assert.assertTrue((System.nanoTime() - start) / 1_000_000 >= 100);
+	}
+
+	@org.junit.Test
+	public void testMalformedRequestsAreRejected() throws Exception {
+		String response = exchange(new HttpServer(HttpServerTest::handle), "GET /a HTTP/1.1\r\n\r\nnonsense\r\n\r\n");
+		Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+		Assert.assertTrue(response, response.contains("HTTP/1.1 400 Bad Request\r\n"));
+
+		response = exchange(new HttpServer(HttpServerTest::handle).setMaxBodySize(4), "POST /a HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello");
+		Assert.assertTrue(response, response.startsWith("HTTP/1.1 413 Payload Too Large\r\n"));
+	}
+
+	@org.junit.Test
+	public void testHandlerErrorsAnswer500() throws Exception {
+		Exception[] reported = new Exception[1];
+		String response = exchange(new HttpServer((request) -> {
+			throw (new IllegalStateException("expected"));
+		}).setErrorHandler((exception) -> reported[0] = exception), "GET /a HTTP/1.1\r\nConnection: close\r\n\r\n");
+		Assert.assertTrue(response, response.startsWith("HTTP/1.1 500 Internal Server Error\r\n"));
+		Assert.assertTrue(reported[0] instanceof IllegalStateException);
+	}
+
+	@org.junit.Test
+	public void testStreamedBodiesHoldBackLaterResponses() throws Exception {
+		String response = exchange(new HttpServer((request) -> {
+			HttpResponse response1 = new HttpResponse().setBody(request.getPath());
+			if (!request.getPath().equals("/stream")) return Promise.resolved(response1);
+			return Promise.resolved(response1.setBodyWriter((output) -> {
+				output.writeAsync("one,");
+				Promise<Object> done = new Promise<>();
+				EventLoopHolder.current().setTimeout(() -> {
+					output.writeAsync("two");
+					done.resolve(null);
+				}, 50);
+				return done;
+			}));
+		}), "GET /stream HTTP/1.1\r\n\r\nGET /last HTTP/1.1\r\nConnection: close\r\n\r\n");
+		Assert.assertEquals(
+			"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\none,\r\n3\r\ntwo\r\n0\r\n\r\n" +
+			"HTTP/1.1 200 OK\r\nContent-Length: 5\r\nConnection: close\r\n\r\n/last",
+			response
+		);
+	}
+}
@@ -0,0 +1,57 @@
+package jawaitasync.loop;
+
+import jawaitasync.Promise;
+import org.junit.Assert;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class EventLoopGroupTest {
+	@org.junit.Test
+	public void testNextIsRoundRobin() throws Exception {
+		EventLoopGroup group = new EventLoopGroup(3);
+		try {
+			Set<EventLoop> loops = new HashSet<>();
+			for (int n = 0; n < 3; n++) loops.add(group.next());
+			Assert.assertEquals(3, loops.size());
+			Assert.assertSame(group.get(0), group.next());
+		} finally {
+			group.shutdown();
+			group.awaitTermination();
+		}
+	}
+
+	@org.junit.Test
+	public void testContinuationsRunOnTheRegisteringLoop() throws Exception {
+		EventLoopGroup group = new EventLoopGroup(2);
+		Promise<String> promise = new Promise<>();
+		Thread[] threads = new Thread[3];
+		EventLoop[] current = new EventLoop[1];
+		String[] result = new String[1];
+		CountDownLatch done = new CountDownLatch(1);
+
+		group.get(0).enqueue(() -> {
+			threads[0] = Thread.currentThread();
+			current[0] = EventLoopHolder.current();
+			promise.then((value) -> {
+				threads[2] = Thread.currentThread();
+				result[0] = value;
+				done.countDown();
+			});
+			group.get(1).enqueue(() -> {
+				threads[1] = Thread.currentThread();
+				promise.resolve("value");
+			});
+		});
+		done.await();
+		group.shutdown();
+		group.awaitTermination();
+
+		Assert.assertSame(group.get(0), current[0]);
+		Assert.assertEquals("value", result[0]);
+		Assert.assertNotSame(threads[0], threads[1]);
+		Assert.assertSame(threads[0], threads[2]);
+		Assert.assertSame(EventLoopHolder.instance, EventLoopHolder.current());
+	}
+}
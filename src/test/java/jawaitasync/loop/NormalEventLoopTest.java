@@ -0,0 +1,106 @@
+package jawaitasync.loop;
+
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NormalEventLoopTest {
+	@org.junit.Test
+	public void testTasksFromOtherThreadsRunInOrderOnLoopThread() throws Exception {
+		final int producerCount = 4;
+		final int tasksPerProducer = 50000;
+		NormalEventLoop loop = new NormalEventLoop();
+		int[] lastByProducer = new int[producerCount];
+		int[] executed = new int[1];
+		boolean[] outOfOrder = new boolean[1];
+		Thread[] loopThread = new Thread[1];
+		List<Thread> producers = new ArrayList<>();
+
+		loop.refCountInc();
+		loop.enqueue(() -> loopThread[0] = Thread.currentThread());
+		for (int n = 0; n < producerCount; n++) {
+			final int producer = n;
+			producers.add(new Thread(() -> {
+				for (int m = 1; m <= tasksPerProducer; m++) {
+					final int value = m;
+					loop.enqueue(() -> {
+						if (Thread.currentThread() != loopThread[0]) outOfOrder[0] = true;
+						if (lastByProducer[producer] != value - 1) outOfOrder[0] = true;
+						lastByProducer[producer] = value;
+						if (++executed[0] == producerCount * tasksPerProducer) loop.refCountDec();
+					});
+				}
+			}));
+		}
+		for (Thread producer : producers) producer.start();
+		loop.loop();
+		for (Thread producer : producers) producer.join();
+
+		Assert.assertEquals(producerCount * tasksPerProducer, executed[0]);
+		Assert.assertFalse(outOfOrder[0]);
+	}
+
+	@org.junit.Test
+	public void testParkedLoopIsWokenUp() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop(0);
+		StringBuilder out = new StringBuilder();
+		loop.refCountInc();
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+			}
+			loop.enqueue(() -> {
+				out.append("woken");
+				loop.refCountDec();
+			});
+		}).start();
+		loop.loop();
+		Assert.assertEquals("woken", out.toString());
+	}
+
+	@org.junit.Test
+	public void testTimeoutsFireInDeadlineOrder() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		long start = System.nanoTime();
+		loop.setTimeout(() -> out.append("c"), 30);
+		loop.setTimeout(() -> out.append("a"), 0);
+		loop.setTimeout(() -> out.append("b"), 10);
+		loop.loop();
+		Assert.assertEquals("abc", out.toString());
+		Assert.assertTrue(System.nanoTime() - start >= 30_000_000L);
+	}
+
+	@org.junit.Test
+	public void testCancelledTimeoutsDontFireNorKeepTheLoopAlive() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop();
+		StringBuilder out = new StringBuilder();
+		Timeout remote = loop.setTimeout(() -> out.append("remote"), 60000);
+		Assert.assertTrue(remote.cancel());
+		Assert.assertFalse(remote.cancel());
+		loop.enqueue(() -> {
+			Timeout local = loop.setTimeout(() -> out.append("local"), 60000);
+			loop.setTimeout(() -> {
+				out.append("fired");
+				Assert.assertTrue(local.cancel());
+			}, 5);
+		});
+		long start = System.nanoTime();
+		loop.loop();
+		Assert.assertEquals("fired", out.toString());
+		Assert.assertTrue(remote.isCancelled());
+		Assert.assertTrue(System.nanoTime() - start < 10_000_000_000L);
+	}
+
+	@org.junit.Test
+	public void testTimeoutsSpanningSeveralWheelRounds() throws Exception {
+		NormalEventLoop loop = new NormalEventLoop(0, 1, 4);
+		int[] fired = new int[1];
+		int count = 100000;
+		for (int n = 0; n < count; n++) loop.setTimeout(() -> fired[0]++, n % 20);
+		loop.loop();
+		Assert.assertEquals(count, fired[0]);
+	}
+}
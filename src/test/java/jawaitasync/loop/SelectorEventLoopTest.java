@@ -0,0 +1,104 @@
+package jawaitasync.loop;
+
+import jawaitasync.tools.AsyncSocket;
+import jawaitasync.tools.AsyncSocketListener;
+import org.junit.Assert;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+
+public class SelectorEventLoopTest {
+	@org.junit.Test
+	public void testAcceptAndReadRunOnTheLoopThread() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		StringBuilder out = new StringBuilder();
+		Thread[] loopThread = new Thread[1];
+		boolean[] foreignThread = new boolean[1];
+
+		loop.enqueue(() -> loopThread[0] = Thread.currentThread());
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then((bound) -> {
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+					OutputStream os = socket.getOutputStream();
+					os.write("hello\nworld\n".getBytes());
+					os.flush();
+					Thread.sleep(50);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}).start();
+			listener.acceptAsync().then((AsyncSocket socket) -> {
+				if (Thread.currentThread() != loopThread[0]) foreignThread[0] = true;
+				socket.readUntilAsync((byte) '\n').then((line) -> {
+					out.append(new String(line).trim());
+					socket.readUntilAsync((byte) '\n').then((line2) -> {
+						if (Thread.currentThread() != loopThread[0]) foreignThread[0] = true;
+						out.append(new String(line2).trim());
+						try {
+							socket.close();
+							listener.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					});
+				});
+			});
+		});
+		loop.loop();
+
+		Assert.assertEquals("helloworld", out.toString());
+		Assert.assertFalse(foreignThread[0]);
+	}
+
+	@org.junit.Test
+	public void testSelectingLoopIsWokenUpByOtherThreads() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop(0);
+		Pipe pipe = Pipe.open();
+		StringBuilder out = new StringBuilder();
+		// Keeps the selector open and the loop blocked in select
+		loop.register(pipe.source(), SelectionKey.OP_READ, (key) -> {
+		});
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+			}
+			loop.enqueue(() -> {
+				out.append("woken");
+				try {
+					pipe.source().close();
+					pipe.sink().close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+		}).start();
+		loop.loop();
+		Assert.assertEquals("woken", out.toString());
+	}
+
+	@org.junit.Test
+	public void testHandlerErrorsAreReportedBeforeClosing() throws Exception {
+		Throwable[] reported = new Throwable[1];
+		SelectorEventLoop loop = new SelectorEventLoop() {
+			@Override
+			protected void handleException(Throwable exception) {
+				reported[0] = exception;
+			}
+		};
+		Pipe pipe = Pipe.open();
+		loop.register(pipe.source(), SelectionKey.OP_READ, (key) -> {
+			throw (new IllegalStateException("handler bug"));
+		});
+		pipe.sink().write(java.nio.ByteBuffer.wrap(new byte[] { 1 }));
+		pipe.sink().close();
+		loop.loop();
+		Assert.assertEquals("handler bug", reported[0].getMessage());
+		Assert.assertFalse(pipe.source().isOpen());
+	}
+}
@@ -0,0 +1,134 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetBoundException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AsyncDatagramChannelTest {
+	static private final int COUNT = 100;
+
+	@org.junit.Test
+	public void testSendBeforeBindRejects() throws Exception {
+		AsyncDatagramChannel channel = new AsyncDatagramChannel();
+		Object result = channel.sendAsync(new byte[] { 1 }, new InetSocketAddress("127.0.0.1", 9)).getResolvedValue();
+		Assert.assertTrue(result instanceof NotYetBoundException);
+		channel.close();
+		result = channel.sendAsync(new byte[] { 1 }, new InetSocketAddress("127.0.0.1", 9)).getResolvedValue();
+		Assert.assertTrue(result instanceof ClosedChannelException);
+	}
+
+	@org.junit.Test
+	public void testBadDestinationDoesNotBlockLaterSends() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncDatagramChannel channel = new AsyncDatagramChannel();
+		Object[] results = new Object[3];
+
+		channel.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			try {
+				SocketAddress self = channel.getLocalAddress();
+				Promise<?> bad = channel.sendAsync(new byte[] { 1 }, InetSocketAddress.createUnresolved("unresolved.invalid", 9));
+				((Promise<Object>) bad).then((value) -> results[0] = value);
+				Promise<?> good = channel.sendAsync(new byte[] { 2 }, self);
+				((Promise<Object>) good).then((value) -> results[1] = "sent");
+				channel.receiveAsync().then((Datagram datagram) -> {
+					results[2] = datagram.getData().buffer().get(0);
+					datagram.release();
+					channel.close();
+				});
+			} catch (IOException e) {
+				channel.close();
+			}
+		});
+		loop.loop();
+		Assert.assertTrue(String.valueOf(results[0]), results[0] instanceof UnresolvedAddressException);
+		Assert.assertEquals("sent", results[1]);
+		Assert.assertEquals((byte) 2, results[2]);
+	}
+
+	@org.junit.Test
+	public void testReceiveBurstAndReply() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncDatagramChannel channel = new AsyncDatagramChannel();
+		List<String> received = new ArrayList<>();
+		int[] queuedAfterBurst = new int[1];
+		String[] reply = new String[1];
+
+		channel.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			loop.refCountInc();
+			new Thread(() -> {
+				try (DatagramSocket socket = new DatagramSocket()) {
+					SocketAddress address = channel.getLocalAddress();
+					for (int n = 0; n < COUNT; n++) {
+						byte[] data = ("metric." + n).getBytes(StandardCharsets.UTF_8);
+						socket.send(new DatagramPacket(data, data.length, address));
+					}
+					DatagramPacket packet = new DatagramPacket(new byte[100], 100);
+					socket.receive(packet);
+					reply[0] = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				loop.enqueue(() -> {
+					channel.close();
+					loop.refCountDec();
+				});
+			}).start();
+			// Nobody receives until the burst is queued
+			loop.setTimeout(() -> {
+				queuedAfterBurst[0] = channel.getQueuedCount();
+				for (int n = 0; n < COUNT; n++) {
+					boolean last = (n == COUNT - 1);
+					channel.receiveAsync().then((Datagram datagram) -> {
+						received.add(StandardCharsets.UTF_8.decode(datagram.getData().buffer()).toString());
+						datagram.release();
+						if (last) channel.sendAsync(("got " + received.size()).getBytes(StandardCharsets.UTF_8), datagram.getAddress());
+					});
+				}
+			}, 200);
+		});
+		loop.loop();
+
+		Assert.assertEquals(COUNT, queuedAfterBurst[0]);
+		Assert.assertEquals(COUNT, received.size());
+		Assert.assertEquals("metric.0", received.get(0));
+		Assert.assertEquals("metric." + (COUNT - 1), received.get(COUNT - 1));
+		Assert.assertEquals("got " + COUNT, reply[0]);
+	}
+
+	@org.junit.Test
+	public void testReceivingPausesWhenQueueIsFull() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncDatagramChannel channel = new AsyncDatagramChannel(new SocketOptions(), 10);
+		int[] queued = new int[1];
+
+		channel.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			try (DatagramSocket socket = new DatagramSocket()) {
+				for (int n = 0; n < 50; n++) socket.send(new DatagramPacket(new byte[] { (byte) n }, 1, channel.getLocalAddress()));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			loop.setTimeout(() -> {
+				queued[0] = channel.getQueuedCount();
+				channel.close();
+			}, 100);
+		});
+		loop.loop();
+		Assert.assertEquals(10, queued[0]);
+	}
+}
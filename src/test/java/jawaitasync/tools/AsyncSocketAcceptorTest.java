@@ -0,0 +1,134 @@
+package jawaitasync.tools;
+
+import jawaitasync.loop.EventLoopGroup;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class AsyncSocketAcceptorTest {
+	static private final int CONNECTIONS = 8;
+
+	// Echoes one line with the name of the worker thread, then closes
+	private Set<String> connectAll(SocketOptions options, int[] listenerCount) throws Exception {
+		EventLoopGroup workers = new EventLoopGroup(2);
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+		boolean[] noDelay = { true };
+
+		AsyncSocketAcceptor acceptor = new AsyncSocketAcceptor(workers, options, (socket) -> {
+			if (!socket.socketChannel.socket().getTcpNoDelay()) noDelay[0] = false;
+			socket.readUntilAsync((byte) '\n').then((byte[] line) -> {
+				try {
+					socket.write((Thread.currentThread().getName() + "\n").getBytes());
+					socket.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+		});
+		acceptor.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then((bound) -> {
+			listenerCount[0] = acceptor.getListenerCount();
+			loop.refCountInc();
+			new Thread(() -> {
+				try {
+					for (int n = 0; n < CONNECTIONS; n++) {
+						try (Socket socket = new Socket("127.0.0.1", acceptor.getLocalPort())) {
+							socket.getOutputStream().write("hello\n".getBytes());
+							threads.add(new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine());
+						}
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				acceptor.close();
+				loop.refCountDec();
+			}).start();
+		});
+		loop.loop();
+		workers.shutdown();
+		workers.awaitTermination();
+		Assert.assertTrue(noDelay[0]);
+		return threads;
+	}
+
+	@org.junit.Test
+	public void testFailedConnectionsDoNotCloseTheListener() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		// Setting up the first accepted socket fails
+		SocketOptions options = new SocketOptions() {
+			private boolean failed = false;
+
+			@Override
+			void applyTo(SocketChannel channel) throws IOException {
+				if (!failed) {
+					failed = true;
+					throw (new IOException("expected"));
+				}
+				super.applyTo(channel);
+			}
+		};
+		List<Exception> errors = new ArrayList<>();
+		String[] reply = new String[1];
+		AsyncSocketListener listener = new AsyncSocketListener(options).setErrorHandler(errors::add);
+
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			listener.acceptAsync().then((AsyncSocket socket) -> {
+				try {
+					socket.write("accepted\n".getBytes());
+					socket.close();
+					listener.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+			loop.refCountInc();
+			new Thread(() -> {
+				try {
+					try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+						socket.getInputStream().read();
+					}
+					try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+						reply[0] = new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				loop.enqueue(loop::refCountDec);
+			}).start();
+		});
+		loop.loop();
+		Assert.assertEquals("accepted", reply[0]);
+		Assert.assertEquals(1, errors.size());
+		Assert.assertEquals("expected", errors.get(0).getMessage());
+	}
+
+	@org.junit.Test
+	public void testSocketsAreSpreadBetweenWorkers() throws Exception {
+		int[] listenerCount = new int[1];
+		Set<String> threads = connectAll(new SocketOptions().setTcpNoDelay(true).setBacklog(64), listenerCount);
+		Assert.assertEquals(1, listenerCount[0]);
+		Assert.assertEquals(new HashSet<>(java.util.Arrays.asList("jawaitasync-loop-0", "jawaitasync-loop-1")), threads);
+	}
+
+	@org.junit.Test
+	public void testReusePortBindsOneListenerPerWorker() throws Exception {
+		int[] listenerCount = new int[1];
+		Set<String> threads = connectAll(new SocketOptions().setTcpNoDelay(true).setReusePort(true), listenerCount);
+		Assert.assertFalse(threads.isEmpty());
+		Assert.assertEquals(SocketOptions.isReusePortSupported() ? 2 : 1, listenerCount[0]);
+	}
+}
@@ -0,0 +1,150 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AsyncSocketPoolTest {
+	private SelectorEventLoop loop;
+	private AsyncSocketListener listener;
+	private final List<AsyncSocket> serverSockets = new ArrayList<>();
+
+	// Echo server on the test loop, keeps accepting until closed
+	private Promise<AsyncSocketListener> startServer() {
+		loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		listener = new AsyncSocketListener();
+		Promise<AsyncSocketListener> bound = listener.bindAsync(new InetSocketAddress("127.0.0.1", 0));
+		bound.then(this::acceptNext);
+		return bound;
+	}
+
+	private void acceptNext() {
+		listener.acceptAsync().then((AsyncSocket socket) -> {
+			serverSockets.add(socket);
+			echo(socket);
+			acceptNext();
+		});
+	}
+
+	private void echo(AsyncSocket socket) {
+		((Promise<Object>) (Promise<?>) socket.readUntilAsync((byte) '\n')).then((line) -> {
+			if (line instanceof Exception) return;
+			socket.writeAsync((byte[]) line);
+			echo(socket);
+		});
+	}
+
+	private InetSocketAddress address() throws Exception {
+		return new InetSocketAddress("127.0.0.1", listener.getLocalPort());
+	}
+
+	@org.junit.Test
+	public void testConnectWriteAndRead() throws Exception {
+		String[] result = new String[1];
+		startServer().then(() -> {
+			try {
+				AsyncSocket.connectAsync(address()).then((AsyncSocket socket) -> {
+					socket.writeAsync("hello\n".getBytes());
+					socket.readUntilAsync((byte) '\n').then((byte[] line) -> {
+						result[0] = new String(line);
+						try {
+							socket.close();
+							listener.close();
+							for (AsyncSocket serverSocket : serverSockets) serverSocket.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					});
+				});
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		loop.loop();
+		Assert.assertEquals("hello\n", result[0]);
+	}
+
+	@org.junit.Test
+	public void testConnectToClosedPortIsRejected() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		EventLoopHolder.instance = new SelectorEventLoop();
+		Object[] result = new Object[1];
+		((Promise<Object>) (Promise<?>) AsyncSocket.connectAsync(new InetSocketAddress("127.0.0.1", port))).then((value) -> result[0] = value);
+		EventLoopHolder.instance.loop();
+		Assert.assertTrue(String.valueOf(result[0]), result[0] instanceof ConnectException);
+	}
+
+	@org.junit.Test
+	public void testConnectToUnresolvedAddressIsRejected() throws Exception {
+		EventLoopHolder.instance = new SelectorEventLoop();
+		Object[] result = new Object[1];
+		((Promise<Object>) (Promise<?>) AsyncSocket.connectAsync(InetSocketAddress.createUnresolved("unresolved.invalid", 80))).then((value) -> result[0] = value);
+		EventLoopHolder.instance.loop();
+		Assert.assertTrue(String.valueOf(result[0]), result[0] instanceof UnresolvedAddressException);
+	}
+
+	@org.junit.Test
+	public void testPoolReusesAndLimitsConnections() throws Exception {
+		List<AsyncSocket> acquired = new ArrayList<>();
+		int[] openWhileWaiting = new int[1];
+		startServer().then(() -> {
+			try {
+				AsyncSocketPool pool = new AsyncSocketPool(new SocketOptions(), 1, 50, AsyncSocketPool.DEFAULT_HEALTH_CHECK);
+				InetSocketAddress address = address();
+				pool.acquireAsync(address).then((AsyncSocket first) -> {
+					acquired.add(first);
+					// Waits for the only allowed connection
+					pool.acquireAsync(address).then((AsyncSocket second) -> {
+						acquired.add(second);
+						pool.release(second);
+						// Idle sockets whose peer hung up are replaced
+						try {
+							for (AsyncSocket serverSocket : serverSockets) serverSocket.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+						loop.setTimeout(() -> {
+							pool.acquireAsync(address).then((AsyncSocket third) -> {
+								acquired.add(third);
+								pool.release(third);
+								// Evicted after the idle timeout
+								loop.setTimeout(() -> {
+									Assert.assertEquals(0, pool.getOpenCount(address));
+									Assert.assertEquals(0, pool.getIdleCount(address));
+									try {
+										listener.close();
+										for (AsyncSocket serverSocket : serverSockets) serverSocket.close();
+									} catch (Exception e) {
+										e.printStackTrace();
+									}
+								}, 200);
+							});
+						}, 50);
+					});
+					openWhileWaiting[0] = pool.getOpenCount(address);
+					pool.release(first);
+				});
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		loop.loop();
+		Assert.assertEquals(1, openWhileWaiting[0]);
+		Assert.assertEquals(3, acquired.size());
+		Assert.assertSame(acquired.get(0), acquired.get(1));
+		Assert.assertNotSame(acquired.get(1), acquired.get(2));
+		Assert.assertEquals(2, serverSockets.size());
+	}
+}
@@ -0,0 +1,178 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+public class AsyncSocketTest {
+	static private final int LARGE_SIZE = 8 * 1024 * 1024;
+
+	@org.junit.Test
+	public void testLargeAndPipelinedWritesArriveWhole() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		byte[][] received = new byte[1][];
+		int[] flushed = new int[1];
+
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then((bound) -> {
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+					// Slow reader, so the server hits a full socket buffer
+					Thread.sleep(100);
+					InputStream is = socket.getInputStream();
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] chunk = new byte[65536];
+					int len;
+					while ((len = is.read(chunk)) > 0) out.write(chunk, 0, len);
+					received[0] = out.toByteArray();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}).start();
+			listener.acceptAsync().then((AsyncSocket socket) -> {
+				try {
+					byte[] large = new byte[LARGE_SIZE];
+					for (int n = 0; n < large.length; n++) large[n] = (byte) (n * 31);
+					socket.write("a".getBytes()).write("b".getBytes());
+					socket.writeAsync(ByteBuffer.wrap(large)).then(() -> flushed[0]++);
+					for (int n = 0; n < 100; n++) socket.writeAsync(new byte[] { (byte) n }).then(() -> flushed[0]++);
+					socket.close();
+					listener.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+		});
+		loop.loop();
+		Thread.sleep(200);
+
+		Assert.assertEquals(101, flushed[0]);
+		byte[] data = received[0];
+		Assert.assertEquals(2 + LARGE_SIZE + 100, data.length);
+		Assert.assertEquals('a', data[0]);
+		Assert.assertEquals('b', data[1]);
+		Assert.assertEquals((byte) (12345 * 31), data[2 + 12345]);
+		Assert.assertEquals(99, data[data.length - 1]);
+	}
+
+	@org.junit.Test
+	public void testReadingPausesAboveHighWatermark() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		int[] bufferedWhilePaused = new int[1];
+		boolean[] paused = new boolean[1];
+		byte[][] received = new byte[1][];
+		byte[] sent = new byte[1024 * 1024];
+		for (int n = 0; n < sent.length; n++) sent[n] = (byte) (n * 7);
+
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then((bound) -> {
+			new Thread(() -> {
+				try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+					socket.getOutputStream().write(sent);
+					socket.getInputStream().read();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}).start();
+			listener.acceptAsync().then((AsyncSocket socket) -> {
+				socket.setReadWatermarks(1024, 4096);
+				loop.refCountInc();
+				// Nobody reads for a while: the socket must stop buffering
+				loop.setTimeout(() -> {
+					paused[0] = socket.isReadPaused();
+					bufferedWhilePaused[0] = socket.readQueue.available();
+					socket.readBytesAsync(sent.length).then((byte[] bytes) -> {
+						received[0] = bytes;
+						try {
+							socket.close();
+							listener.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+						loop.refCountDec();
+					});
+				}, 200);
+			});
+		});
+		loop.loop();
+
+		Assert.assertTrue(paused[0]);
+		// At most one read past the high watermark
+		Assert.assertTrue(bufferedWhilePaused[0] > 4096);
+		Assert.assertTrue(bufferedWhilePaused[0] <= 4096 + 64 * 1024);
+		Assert.assertArrayEquals(sent, received[0]);
+	}
+
+	@org.junit.Test
+	public void testSendFileBetweenWrites() throws Exception {
+		byte[] content = new byte[5 * 1024 * 1024];
+		new java.util.Random(0).nextBytes(content);
+		java.nio.file.Path path = java.nio.file.Files.createTempFile("jawaitasync", ".bin");
+		java.nio.file.Files.write(path, content);
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		byte[][] received = new byte[1][];
+		boolean[] sent = new boolean[1];
+
+		try {
+			listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then((bound) -> {
+				new Thread(() -> {
+					try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						byte[] chunk = new byte[65536];
+						int len;
+						while ((len = socket.getInputStream().read(chunk)) > 0) out.write(chunk, 0, len);
+						received[0] = out.toByteArray();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}).start();
+				listener.acceptAsync().then((AsyncSocket socket) -> {
+					try {
+						socket.write("<".getBytes());
+						socket.sendFileAsync(path, 100, content.length - 200).then(() -> sent[0] = true);
+						socket.write(">".getBytes());
+						socket.close();
+						listener.close();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				});
+			});
+			loop.loop();
+			Thread.sleep(200);
+		} finally {
+			java.nio.file.Files.delete(path);
+		}
+
+		Assert.assertTrue(sent[0]);
+		byte[] expected = new byte[content.length - 200 + 2];
+		expected[0] = '<';
+		System.arraycopy(content, 100, expected, 1, content.length - 200);
+		expected[expected.length - 1] = '>';
+		Assert.assertArrayEquals(expected, received[0]);
+	}
+
+	@org.junit.Test
+	public void testWritesAfterCloseAreRejected() throws Exception {
+		EventLoopHolder.instance = new SelectorEventLoop();
+		AsyncSocket socket = new AsyncSocket(null);
+		socket.close();
+		Object[] result = new Object[1];
+		Promise<?> promise = socket.writeAsync(new byte[1]);
+		((Promise<Object>) promise).then((value) -> result[0] = value);
+		EventLoopHolder.instance.loop();
+		Assert.assertTrue(socket.isClosed());
+		Assert.assertTrue(result[0] instanceof java.nio.channels.ClosedChannelException);
+	}
+}
@@ -0,0 +1,42 @@
+package jawaitasync.tools;
+
+import org.junit.Assert;
+
+public class BufferPoolTest {
+	@org.junit.Test
+	public void testBuffersAreReusedBySizeClass() {
+		BufferPool pool = new BufferPool(4096, 16384);
+		PooledBuffer small = pool.acquire(100);
+		PooledBuffer medium = pool.acquire(1500);
+		Assert.assertEquals(512, small.buffer().capacity());
+		Assert.assertEquals(2048, medium.buffer().capacity());
+		Assert.assertTrue(small.buffer().isDirect());
+
+		small.release();
+		Assert.assertSame(small, pool.acquire(512));
+		PooledBuffer large = pool.acquire(5000);
+		Assert.assertFalse(large.isPooled());
+	}
+
+	@org.junit.Test
+	public void testBuffersReleasedOnOtherThreadsGoBackToTheirPool() throws Exception {
+		BufferPool pool = new BufferPool(4096, 4096);
+		PooledBuffer buffer = pool.acquire(4096);
+		buffer.retain();
+		Thread thread = new Thread(() -> {
+			buffer.release();
+			buffer.release();
+		});
+		thread.start();
+		thread.join();
+		Assert.assertSame(buffer, pool.acquire(4096));
+	}
+
+	@org.junit.Test(expected = IllegalStateException.class)
+	public void testDoubleReleaseFails() {
+		BufferPool pool = new BufferPool(4096, 4096);
+		PooledBuffer buffer = pool.acquire(64);
+		buffer.release();
+		buffer.release();
+	}
+}
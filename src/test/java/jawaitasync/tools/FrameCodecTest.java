@@ -0,0 +1,249 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameCodecTest {
+	// Feeds the encoded bytes split at every position, decoding after each part
+	private <T> List<Object> roundTrip(FrameEncoder<T> encoder, FrameDecoder<?> decoder, List<T> messages) throws IOException {
+		List<ByteBuffer> encoded = new ArrayList<>();
+		for (T message : messages) encoder.encode(message, encoded);
+		int size = 0;
+		for (ByteBuffer buffer : encoded) size += buffer.remaining();
+		byte[] bytes = new byte[size];
+		int offset = 0;
+		for (ByteBuffer buffer : encoded) {
+			int length = buffer.remaining();
+			buffer.duplicate().get(bytes, offset, length);
+			offset += length;
+		}
+		List<Object> result = null;
+		for (int split = 0; split <= bytes.length; split++) {
+			ReadQueue queue = new ReadQueue();
+			List<Object> decoded = new ArrayList<>();
+			queue.add(ByteBuffer.wrap(bytes, 0, split));
+			decodeAll(decoder, queue, decoded);
+			queue.add(ByteBuffer.wrap(bytes, split, bytes.length - split));
+			decodeAll(decoder, queue, decoded);
+			Assert.assertEquals(0, queue.available());
+			if (result != null) Assert.assertEquals(result, decoded);
+			result = decoded;
+		}
+		return result;
+	}
+
+	private void decodeAll(FrameDecoder<?> decoder, ReadQueue queue, List<Object> decoded) throws IOException {
+		Object message;
+		while ((message = decoder.decode(queue)) != null) {
+			if (message instanceof PooledBuffer) {
+				PooledBuffer buffer = (PooledBuffer) message;
+				message = StandardCharsets.UTF_8.decode(buffer.buffer()).toString();
+				buffer.release();
+			}
+			decoded.add(message);
+		}
+	}
+
+	static private ByteBuffer utf8(String value) {
+		return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@org.junit.Test
+	public void testLengthField() throws Exception {
+		List<ByteBuffer> messages = new ArrayList<>();
+		for (String value : new String[] { "hello", "", "world!" }) messages.add(utf8(value));
+		List<Object> decoded = roundTrip(new LengthFieldEncoder(2, java.nio.ByteOrder.LITTLE_ENDIAN), new LengthFieldDecoder(2, java.nio.ByteOrder.LITTLE_ENDIAN, 100), messages);
+		Assert.assertEquals(java.util.Arrays.asList("hello", "", "world!"), decoded);
+	}
+
+	@org.junit.Test(expected = IOException.class)
+	public void testLengthFieldRejectsLargeFrames() throws Exception {
+		ReadQueue queue = new ReadQueue();
+		queue.add(ByteBuffer.wrap(new byte[] { 0, 0, 1, 0 }));
+		new LengthFieldDecoder(255).decode(queue);
+	}
+
+	@org.junit.Test
+	public void testLines() throws Exception {
+		List<Object> decoded = roundTrip(new LineEncoder(), new LineDecoder(100), java.util.Arrays.asList("first", "", "sécond"));
+		Assert.assertEquals(java.util.Arrays.asList("first", "", "sécond"), decoded);
+
+		ReadQueue queue = new ReadQueue();
+		queue.add(utf8("crlf\r\nrest"));
+		LineDecoder decoder = new LineDecoder(100);
+		Assert.assertEquals("crlf", decoder.decode(queue));
+		Assert.assertNull(decoder.decode(queue));
+		Assert.assertEquals(4, queue.available());
+	}
+
+	// type (1 byte), body length (2 bytes), body
+	static private final class Message {
+		final int type;
+		final String body;
+
+		Message(int type, String body) {
+			this.type = type;
+			this.body = body;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Message && ((Message) other).type == type && ((Message) other).body.equals(body);
+		}
+
+		@Override
+		public int hashCode() {
+			return type;
+		}
+	}
+
+	@org.junit.Test
+	public void testFixedHeader() throws Exception {
+		FixedHeaderEncoder<Message> encoder = new FixedHeaderEncoder<Message>(3) {
+			@Override
+			protected ByteBuffer body(Message message) {
+				return utf8(message.body);
+			}
+
+			@Override
+			protected void writeHeader(Message message, ByteBuffer body, ByteBuffer header) {
+				header.put((byte) message.type).putShort((short) body.remaining());
+			}
+		};
+		FixedHeaderDecoder<Message> decoder = new FixedHeaderDecoder<Message>(3) {
+			@Override
+			protected int bodyLength(ByteBuffer header) {
+				return header.getShort(1) & 0xFFFF;
+			}
+
+			@Override
+			protected Message decode(ByteBuffer header, PooledBuffer body) {
+				String value = StandardCharsets.UTF_8.decode(body.buffer()).toString();
+				body.release();
+				return new Message(header.get(0), value);
+			}
+		};
+		List<Message> messages = java.util.Arrays.asList(new Message(1, "ping"), new Message(2, ""), new Message(3, "pong"));
+		Assert.assertEquals(messages, roundTrip(encoder, decoder, messages));
+	}
+
+	private FixedHeaderDecoder<PooledBuffer> intHeaderDecoder(int maxFrameLength) {
+		return new FixedHeaderDecoder<PooledBuffer>(4, maxFrameLength) {
+			@Override
+			protected int bodyLength(ByteBuffer header) {
+				return header.getInt(0);
+			}
+
+			@Override
+			protected PooledBuffer decode(ByteBuffer header, PooledBuffer body) {
+				return body;
+			}
+		};
+	}
+
+	@org.junit.Test(expected = IOException.class)
+	public void testFixedHeaderRejectsLargeFrames() throws Exception {
+		ReadQueue queue = new ReadQueue();
+		queue.add(ByteBuffer.wrap(new byte[] { 0, 0, 1, 0 }));
+		intHeaderDecoder(255).decode(queue);
+	}
+
+	@org.junit.Test(expected = IOException.class)
+	public void testFixedHeaderRejectsNegativeLengths() throws Exception {
+		ReadQueue queue = new ReadQueue();
+		queue.add(ByteBuffer.wrap(new byte[] { -1, -1, -1, -1 }));
+		intHeaderDecoder(255).decode(queue);
+	}
+
+	@org.junit.Test
+	public void testFixedHeaderReleasesTheBodyOfMalformedFrames() throws Exception {
+		FixedHeaderDecoder<Message> decoder = new FixedHeaderDecoder<Message>(3) {
+			@Override
+			protected int bodyLength(ByteBuffer header) {
+				return header.getShort(1) & 0xFFFF;
+			}
+
+			@Override
+			protected Message decode(ByteBuffer header, PooledBuffer body) throws IOException {
+				if (header.get(0) != 1) throw (new IOException("Unknown type " + header.get(0)));
+				String value = StandardCharsets.UTF_8.decode(body.buffer()).toString();
+				body.release();
+				return new Message(header.get(0), value);
+			}
+		};
+		BufferPool pool = new BufferPool(4096, 4096);
+		PooledBuffer buffer = pool.acquire(512);
+		buffer.buffer().put(new byte[] { 1, 0, 2, 'o', 'k', 9, 0, 2, 'x', 'x' }).flip();
+		ReadQueue queue = new ReadQueue();
+		queue.add(buffer);
+		Assert.assertEquals(new Message(1, "ok"), decoder.decode(queue));
+		try {
+			decoder.decode(queue);
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("Unknown type 9", e.getMessage());
+		}
+		queue.clear();
+		// The body slice held a reference, the buffer only goes back to the pool once it's released
+		Assert.assertSame(buffer, pool.acquire(512));
+	}
+
+	@org.junit.Test
+	public void testFramesOverSocket() throws Exception {
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener();
+		List<String> received = new ArrayList<>();
+
+		listener.bindAsync(new InetSocketAddress("127.0.0.1", 0)).then(() -> {
+			listener.acceptAsync().then((AsyncSocket server) -> {
+				LineDecoder decoder = new LineDecoder(1024);
+				for (int n = 0; n < 3; n++) {
+					boolean last = (n == 2);
+					server.readFrameAsync(decoder).then((String line) -> {
+						server.writeFrameAsync(new LineEncoder(), line.toUpperCase());
+						try {
+							if (last) server.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					});
+				}
+			});
+			try {
+				AsyncSocket.connectAsync(new InetSocketAddress("127.0.0.1", listener.getLocalPort())).then((AsyncSocket client) -> {
+					// All three lines arrive in one write
+					client.writeAsync("one\ntwo\r\nthree\n".getBytes());
+					LineDecoder decoder = new LineDecoder(1024);
+					for (int n = 0; n < 3; n++) {
+						Promise<String> line = client.readFrameAsync(decoder);
+						line.then((String value) -> {
+							received.add(value);
+							if (received.size() == 3) {
+								try {
+									client.close();
+									listener.close();
+								} catch (IOException e) {
+									e.printStackTrace();
+								}
+							}
+						});
+					}
+				});
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		loop.loop();
+		Assert.assertEquals(java.util.Arrays.asList("ONE", "TWO", "THREE"), received);
+	}
+}
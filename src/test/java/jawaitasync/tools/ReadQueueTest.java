@@ -0,0 +1,109 @@
+package jawaitasync.tools;
+
+import jawaitasync.Promise;
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.NormalEventLoop;
+import org.junit.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ReadQueueTest {
+	@org.junit.Test
+	public void testIndexOfMatchesNaiveSearch() {
+		Random random = new Random(0);
+		for (int test = 0; test < 200; test++) {
+			ReadQueue queue = new ReadQueue();
+			List<Byte> all = new ArrayList<>();
+			int bufferCount = 1 + random.nextInt(4);
+			for (int n = 0; n < bufferCount; n++) {
+				byte[] data = new byte[random.nextInt(40)];
+				for (int m = 0; m < data.length; m++) data[m] = (byte) random.nextInt(8);
+				for (byte b : data) all.add(b);
+				int offset = random.nextInt(3);
+				ByteBuffer buffer = ByteBuffer.allocate(data.length + offset);
+				buffer.position(offset);
+				buffer.put(data);
+				buffer.position(offset);
+				queue.add(buffer);
+			}
+			byte value = (byte) random.nextInt(8);
+			int from = random.nextInt(all.size() + 1);
+			int expected = -1;
+			for (int n = from; n < all.size(); n++) {
+				if (all.get(n) == value) {
+					expected = n;
+					break;
+				}
+			}
+			Assert.assertEquals(expected, queue.indexOf(value, from));
+		}
+	}
+
+	@org.junit.Test
+	public void testBulkReadsAndSlices() {
+		ReadQueue queue = new ReadQueue();
+		byte[] first = "hello\nwor".getBytes();
+		queue.add(ByteBuffer.wrap(first));
+		queue.add(ByteBuffer.wrap("ld\n".getBytes()));
+		Assert.assertEquals(12, queue.available());
+
+		ByteBuffer line = queue.getBuffer(queue.indexOf((byte) '\n', 0) + 1).buffer();
+		// Single buffer match: a view, not a copy
+		Assert.assertSame(first, line.array());
+		Assert.assertEquals("hello\n", new String(line.array(), line.arrayOffset() + line.position(), line.remaining()));
+
+		byte[] rest = queue.getBytes(queue.indexOf((byte) '\n', 0) + 1);
+		Assert.assertEquals("world\n", new String(rest));
+		Assert.assertEquals(0, queue.available());
+	}
+
+	@org.junit.Test
+	public void testSocketReadsAcrossChunks() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		AsyncSocket socket = new AsyncSocket(null);
+		StringBuilder out = new StringBuilder();
+		socket.readUntilAsync((byte) '\n').then((bytes) -> out.append("[" + new String(bytes).trim() + "]"));
+		socket.readBytesAsync(4).then((bytes) -> out.append("[" + new String(bytes) + "]"));
+		socket.readUntilBufferAsync((byte) ';').then((buffer) -> out.append("[" + buffer.buffer().remaining() + "]"));
+		for (String part : new String[] { "GET / HT", "TP/1.1", "\r\nab", "cd0123456789", "abc;" }) {
+			socket.onData(ByteBuffer.wrap(part.getBytes()));
+		}
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("[GET / HTTP/1.1][abcd][14]", out.toString());
+	}
+
+	@org.junit.Test
+	public void testDelimitedReadsAreBounded() throws Exception {
+		EventLoopHolder.instance = new NormalEventLoop();
+		AsyncSocket socket = new AsyncSocket(null);
+		StringBuilder out = new StringBuilder();
+		socket.readUntilAsync((byte) '\n', 8).then((bytes) -> out.append("[" + new String(bytes).trim() + "]"));
+		((Promise<Object>) (Promise<?>) socket.readUntilAsync((byte) '\n', 8)).then((result) -> out.append("[" + result.getClass().getSimpleName() + "]"));
+		((Promise<Object>) (Promise<?>) socket.readBytesAsync(1)).then((result) -> out.append("[" + result.getClass().getSimpleName() + "]"));
+		socket.onData(ByteBuffer.wrap("1234567\n".getBytes()));
+		socket.onData(ByteBuffer.wrap("1234".getBytes()));
+		socket.onData(ByteBuffer.wrap("5678".getBytes()));
+		EventLoopHolder.instance.loop();
+		Assert.assertEquals("[1234567][IOException][EOFException]", out.toString());
+	}
+
+	@org.junit.Test
+	public void testPooledBuffersAreReleasedOnceRead() {
+		BufferPool pool = new BufferPool(4096, 16384);
+		ReadQueue queue = new ReadQueue();
+		PooledBuffer first = pool.acquire(1000);
+		first.buffer().put("abc\ndef".getBytes()).flip();
+		queue.add(first);
+
+		PooledBuffer line = queue.getBuffer(4);
+		Assert.assertTrue(line.buffer().isDirect());
+		queue.skip(3);
+		// Still referenced by the line
+		Assert.assertNotSame(first, pool.acquire(1000));
+		line.release();
+		Assert.assertSame(first, pool.acquire(1000));
+	}
+}
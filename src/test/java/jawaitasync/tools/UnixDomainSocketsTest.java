@@ -0,0 +1,60 @@
+package jawaitasync.tools;
+
+import jawaitasync.loop.EventLoopHolder;
+import jawaitasync.loop.SelectorEventLoop;
+import org.junit.Assert;
+import org.junit.Assume;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class UnixDomainSocketsTest {
+	@org.junit.Test
+	public void testEchoLineOverUnixSocket() throws Exception {
+		Assume.assumeTrue(UnixDomainSockets.isSupported());
+		Path directory = Files.createTempDirectory("jawaitasync");
+		Path path = directory.resolve("echo.sock");
+		SocketAddress address = UnixDomainSockets.address(path);
+		SelectorEventLoop loop = new SelectorEventLoop();
+		EventLoopHolder.instance = loop;
+		AsyncSocketListener listener = new AsyncSocketListener(new SocketOptions().setTcpNoDelay(true));
+		String[] result = new String[1];
+
+		listener.bindAsync(address).then(() -> {
+			listener.acceptAsync().then((AsyncSocket server) -> {
+				server.readUntilAsync((byte) '\n').then((byte[] line) -> {
+					try {
+						server.write(line).close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				});
+			});
+			AsyncSocket.connectAsync(address).then((AsyncSocket client) -> {
+				client.writeAsync("over ipc\n".getBytes());
+				client.readUntilAsync((byte) '\n').then((byte[] line) -> {
+					result[0] = new String(line);
+					try {
+						client.close();
+						listener.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				});
+			});
+		});
+		loop.loop();
+
+		Assert.assertEquals("over ipc\n", result[0]);
+		// The listener removes its socket file
+		Assert.assertFalse(Files.exists(path));
+		Files.delete(directory);
+	}
+
+	@org.junit.Test
+	public void testInetAddressesAreNotUnix() {
+		Assert.assertFalse(UnixDomainSockets.isUnixAddress(new java.net.InetSocketAddress(80)));
+	}
+}